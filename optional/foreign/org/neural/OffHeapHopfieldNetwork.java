@@ -0,0 +1,27 @@
+package org.neural;
+
+/**
+ * OffHeapHopfieldNetwork: a HopfieldNetwork whose N x N weight matrix of
+ * doubles is held off the Java heap, out of reach of the garbage collector,
+ * and freed once the network is unreachable. getWeight() returns a copy on
+ * the heap. <br/>
+ * 
+ * This class needs the java.lang.foreign API, so it is compiled from the
+ * optional/foreign source root rather than with the rest of the network. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public class OffHeapHopfieldNetwork extends HopfieldNetwork {
+
+	/**
+	 * Create a network of the given size with its weights off the heap <br/>
+	 * 
+	 * @param size
+	 *            the number of neurons in the network
+	 */
+	public OffHeapHopfieldNetwork(final int size) {
+		super(new OffHeapWeights(size));
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.neural;
+
+import org.util.Matrix;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.OffHeapMatrix;
+
+/**
+ * OffHeapWeights: stores the weights of a Hopfield network in an N x N
+ * OffHeapMatrix outside the Java heap, so that the largest networks put no
+ * load on the garbage collector. The memory is freed automatically once the
+ * store is no longer reachable, which also suits the snapshots of a
+ * ConcurrentHopfieldNetwork, whose readers may outlive a version. <br/>
+ * 
+ * This class only compiles and links with the java.lang.foreign API present,
+ * so it lives in the optional/foreign source root, and networks use it
+ * through OffHeapHopfieldNetwork. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class OffHeapWeights extends WeightStore {
+
+	private final OffHeapMatrix weightMatrix;
+
+	private final int size;
+
+	OffHeapWeights(final int size) {
+
+		this(new OffHeapMatrix(size, size));
+
+	}
+
+	private OffHeapWeights(final OffHeapMatrix weightMatrix) {
+
+		this.weightMatrix = weightMatrix;
+		this.size = (int) weightMatrix.getRows();
+
+	}
+
+	@Override
+	int getSize() {
+
+		return size;
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields) {
+
+		// the weights are symmetric, so the columns are read as rows
+		try {
+			weightMatrix.multiply(state.getData(), fields.getData());
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields, final int from,
+			final int to) {
+
+		weightMatrix.multiplyRows(state.getData(), fields.getData(), from, to);
+
+	}
+
+	@Override
+	void addWeights(final int neuron, final double alpha,
+			final double fields[]) {
+
+		weightMatrix.addRow(neuron, alpha, fields);
+
+	}
+
+	@Override
+	void train(final Matrix pattern) {
+
+		try {
+			weightMatrix.rankOneUpdate(1, pattern.getData(), pattern.getData(),
+					true);
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void add(final Matrix delta, final int patterns) {
+
+		try {
+			weightMatrix.add(delta);
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	double getWeight(final int row, final int col) {
+
+		double weight = 0;
+
+		try {
+			weight = weightMatrix.getElement(row, col);
+		} catch (MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+		return weight;
+
+	}
+
+	@Override
+	WeightStore copy() {
+
+		return new OffHeapWeights(weightMatrix.copy());
+
+	}
+
+	@Override
+	Matrix toMatrix() {
+
+		Matrix copy = null;
+
+		try {
+			copy = weightMatrix.toMatrix();
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+		return copy;
+
+	}
+
+}
@@ -0,0 +1,373 @@
+package org.util;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * OffHeapMatrix: a dense matrix of doubles held outside the Java heap in a
+ * MemorySegment of the foreign function and memory API. Elements are
+ * addressed with 64-bit indexes, so the matrix is not bound by the 2^31
+ * elements of an array, and the garbage collector never scans or copies it,
+ * however large it grows. The elements are stored row after row. <br/>
+ *
+ * <p>
+ * The memory lives as long as the Arena it was allocated in. A matrix
+ * created with an arena of the caller's is freed when the caller closes the
+ * arena; a matrix created without one gets an automatic arena, which frees
+ * the memory once the matrix is no longer reachable. Every arena used must
+ * allow access from all threads, since the kernels split rows across the
+ * pool of MatrixMath.
+ * </p>
+ *
+ * <p>
+ * Since Matrix exposes its storage as a double array, this is a separate
+ * class rather than a kind of Matrix, with the kernels that Hopfield weights
+ * need: the matrix-vector product, the rank-one update and the addition of
+ * a scaled row. This class only compiles and links with the
+ * java.lang.foreign API present, i.e., on Java 22 or later (Java 21 with
+ * preview features enabled), so it lives in the optional/foreign source
+ * root.
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public final class OffHeapMatrix {
+
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+	private final MemorySegment segment;
+
+	private final long rows, cols;
+
+	/**
+	 * Constructor: creates a rows x cols matrix with all elements zero, freed
+	 * automatically once it is no longer reachable <br/>
+	 *
+	 * @param rows
+	 *            the number of rows
+	 * @param cols
+	 *            the number of columns
+	 */
+	public OffHeapMatrix(final long rows, final long cols) {
+
+		this(rows, cols, Arena.ofAuto());
+
+	}
+
+	/**
+	 * Constructor: creates a rows x cols matrix with all elements zero in the
+	 * given arena, which must be usable from any thread <br/>
+	 *
+	 * @param rows
+	 *            the number of rows
+	 * @param cols
+	 *            the number of columns
+	 * @param arena
+	 *            the arena which owns the memory of the matrix
+	 */
+	public OffHeapMatrix(final long rows, final long cols, final Arena arena) {
+
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("negative order " + rows + " x "
+					+ cols);
+
+		this.rows = rows;
+		this.cols = cols;
+		// allocate zeroes the memory
+		this.segment = arena.allocate(DOUBLE.byteSize()
+				* Math.multiplyExact(rows, cols), DOUBLE.byteAlignment());
+
+	}
+
+	/**
+	 * Copy a matrix on the heap into a new off-heap matrix <br/>
+	 *
+	 * @param mat
+	 *            the matrix to be copied
+	 *
+	 * @return an off-heap matrix with the elements of mat
+	 */
+	public static OffHeapMatrix fromMatrix(final Matrix mat) {
+
+		final OffHeapMatrix copy = new OffHeapMatrix(mat.getRows(),
+				mat.getCols());
+		final double packed[] = mat.toPackedArray();
+
+		MemorySegment.copy(packed, 0, copy.segment, DOUBLE, 0, packed.length);
+
+		return copy;
+
+	}
+
+	/**
+	 * Copy this matrix into a new matrix with an automatic arena <br/>
+	 *
+	 * @return an independent copy of this matrix
+	 */
+	public OffHeapMatrix copy() {
+
+		final OffHeapMatrix copy = new OffHeapMatrix(rows, cols);
+
+		MemorySegment.copy(segment, 0, copy.segment, 0, segment.byteSize());
+
+		return copy;
+
+	}
+
+	/**
+	 * Copy this matrix onto the heap <br/>
+	 *
+	 * @return a Matrix with the elements of this matrix
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the matrix has too many elements for an array
+	 */
+	public Matrix toMatrix() throws MatrixIncompatibilityException {
+
+		if (rows * cols > Integer.MAX_VALUE - 8)
+			throw new MatrixIncompatibilityException();
+
+		return new Matrix((int) rows, (int) cols, segment.toArray(DOUBLE));
+
+	}
+
+	/**
+	 * Get the memory segment holding the elements, row after row
+	 *
+	 * @return the backing segment
+	 */
+	public MemorySegment getSegment() {
+
+		return this.segment;
+
+	}
+
+	/**
+	 * Get the number of rows in this matrix
+	 *
+	 * @return number of rows
+	 */
+	public long getRows() {
+
+		return this.rows;
+
+	}
+
+	/**
+	 * Get the number of columns in this matrix
+	 *
+	 * @return number of columns
+	 */
+	public long getCols() {
+
+		return this.cols;
+
+	}
+
+	/**
+	 * Get the element in the row-th row and col-th column <br/>
+	 *
+	 * @param row
+	 *            the row number of the desired element (indexed from 0)
+	 * @param col
+	 *            the column number of the desired element (indexed from 0) <br/>
+	 *
+	 * @return the element at the desired location <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the given column and row values are not in the matrix's
+	 *             bounds
+	 */
+	public double getElement(final long row, final long col)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		return segment.getAtIndex(DOUBLE, row * cols + col);
+
+	}
+
+	/**
+	 * Change the value of an element <br/>
+	 *
+	 * @param row
+	 *            the row number of the element to be set (indexed from 0)
+	 * @param col
+	 *            the column number of the element to be set (indexed from 0)
+	 * @param value
+	 *            the value to which the element has to be changed <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the given column and row values are not in the matrix's
+	 *             bounds
+	 */
+	public void set(final long row, final long col, final double value)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		segment.setAtIndex(DOUBLE, row * cols + col, value);
+
+	}
+
+	/**
+	 * Multiply this matrix with a vector, i.e., compute the dot product of
+	 * every row with x. The rows are split across the pool of MatrixMath <br/>
+	 *
+	 * @param x
+	 *            a vector with as many elements as this matrix has columns
+	 * @param result
+	 *            receives one dot product per row, and must be as long as
+	 *            this matrix has rows <br/>
+	 *
+	 * @return the array result
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and result do not match the order of
+	 *             this matrix
+	 */
+	public double[] multiply(final double x[], final double result[])
+			throws MatrixIncompatibilityException {
+
+		if (x.length != cols || result.length != rows)
+			throw new MatrixIncompatibilityException();
+
+		ParallelRows.run(MatrixMath.getPool(),
+				MatrixMath.getParallelThreshold(), result.length, cols,
+				(from, to) -> multiplyRows(x, result, from, to));
+
+		return result;
+
+	}
+
+	/**
+	 * Compute the dot products of the rows from (inclusive) to (exclusive)
+	 * with a vector, on the calling thread <br/>
+	 *
+	 * @param x
+	 *            a vector with as many elements as this matrix has columns
+	 * @param result
+	 *            receives the dot product of each row in the range
+	 * @param from
+	 *            the first row of the range
+	 * @param to
+	 *            one past the last row of the range <br/>
+	 *
+	 * @return the array result
+	 */
+	public double[] multiplyRows(final double x[], final double result[],
+			final int from, final int to) {
+
+		for (int i = from; i < to; i++) {
+			final long base = i * cols;
+			double sum = 0;
+			for (int j = 0; j < x.length; j++)
+				sum += segment.getAtIndex(DOUBLE, base + j) * x[j];
+			result[i] = sum;
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Add a scaled row of this matrix to a vector, i.e., y = y + alpha *
+	 * a(row) <br/>
+	 *
+	 * @param row
+	 *            the row to be added (indexed from 0)
+	 * @param alpha
+	 *            the multiple of the row to add
+	 * @param y
+	 *            a vector with as many elements as this matrix has columns,
+	 *            updated in place
+	 */
+	public void addRow(final long row, final double alpha, final double y[]) {
+
+		final long base = row * cols;
+
+		for (int j = 0; j < y.length; j++)
+			y[j] += alpha * segment.getAtIndex(DOUBLE, base + j);
+
+	}
+
+	/**
+	 * Add the scaled outer product of two vectors to this matrix in place,
+	 * i.e., a = a + alpha * x * y<sup>T</sup>, as
+	 * {@link MatrixMath#rankOneUpdate(Matrix, double, Matrix, Matrix, boolean)}
+	 * does <br/>
+	 *
+	 * @param alpha
+	 *            the scalar by which the outer product is multiplied
+	 * @param x
+	 *            a vector with as many elements as this matrix has rows
+	 * @param y
+	 *            a vector with as many elements as this matrix has columns
+	 * @param maskDiagonal
+	 *            true to leave the diagonal unchanged <br/>
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and y do not match the order of this
+	 *             matrix
+	 */
+	public void rankOneUpdate(final double alpha, final double x[],
+			final double y[], final boolean maskDiagonal)
+			throws MatrixIncompatibilityException {
+
+		if (x.length != rows || y.length != cols)
+			throw new MatrixIncompatibilityException();
+
+		ParallelRows.run(MatrixMath.getPool(),
+				MatrixMath.getParallelThreshold(), x.length, cols, (from, to) -> {
+					for (int i = from; i < to; i++) {
+						final double ax = alpha * x[i];
+						final long base = i * cols;
+						for (int j = 0; j < y.length; j++)
+							if (!maskDiagonal || i != j)
+								segment.setAtIndex(DOUBLE, base + j,
+										segment.getAtIndex(DOUBLE, base + j)
+												+ ax * y[j]);
+					}
+				});
+
+	}
+
+	/**
+	 * Add a matrix on the heap to this matrix in place <br/>
+	 *
+	 * @param mat
+	 *            a matrix of the same order as this one
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the orders of the matrices differ
+	 */
+	public void add(final Matrix mat) throws MatrixIncompatibilityException {
+
+		if (mat.getRows() != rows || mat.getCols() != cols)
+			throw new MatrixIncompatibilityException();
+
+		final double data[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride();
+
+		for (int i = 0; i < mat.getRows(); i++) {
+			final long base = i * cols;
+			for (int j = 0; j < mat.getCols(); j++)
+				segment.setAtIndex(DOUBLE, base + j,
+						segment.getAtIndex(DOUBLE, base + j)
+								+ data[off + i * stride + j * col]);
+		}
+
+	}
+
+	private void checkBounds(final long row, final long col)
+			throws MatrixIndexOutOfBoundsException {
+
+		if (row < 0 || col < 0 || row >= rows || col >= cols)
+			throw new MatrixIndexOutOfBoundsException();
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdKernels: the MatrixMath kernels written with the incubating vector API.
+ * The species is the preferred one of the running CPU, e.g. four doubles per
+ * vector with AVX2 and eight with AVX-512; the tail of each run that does not
+ * fill a whole vector is handled by the scalar loop. This class is only
+ * loaded by VectorKernels, and only compiles and links with the
+ * jdk.incubator.vector module present, so it lives in the optional/vector
+ * source root, compiled apart from the rest of the tree (see
+ * optional/README.md). <br/>
+ *
+ * @author Srijith Nair
+ *
+ */
+final class SimdKernels extends VectorKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	String name() {
+
+		return "simd " + SPECIES;
+
+	}
+
+	@Override
+	void add(final double a[], final int aOff, final double b[],
+			final int bOff, final double r[], final int rOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i)
+					.add(DoubleVector.fromArray(SPECIES, b, bOff + i))
+					.intoArray(r, rOff + i);
+
+		super.add(a, aOff + i, b, bOff + i, r, rOff + i, length - i);
+
+	}
+
+	@Override
+	void subtract(final double a[], final int aOff, final double b[],
+			final int bOff, final double r[], final int rOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i)
+					.sub(DoubleVector.fromArray(SPECIES, b, bOff + i))
+					.intoArray(r, rOff + i);
+
+		super.subtract(a, aOff + i, b, bOff + i, r, rOff + i, length - i);
+
+	}
+
+	@Override
+	void scale(final double a[], final int aOff, final double factor,
+			final double r[], final int rOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).mul(factor)
+					.intoArray(r, rOff + i);
+
+		super.scale(a, aOff + i, factor, r, rOff + i, length - i);
+
+	}
+
+	@Override
+	void divide(final double a[], final int aOff, final double divisor,
+			final double r[], final int rOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).div(divisor)
+					.intoArray(r, rOff + i);
+
+		super.divide(a, aOff + i, divisor, r, rOff + i, length - i);
+
+	}
+
+	@Override
+	void axpy(final double alpha, final double x[], final int xOff,
+			final double y[], final int yOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		int i = 0;
+
+		// multiply and add separately, a fused multiply-add would round
+		// differently from the scalar loop
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, x, xOff + i).mul(alpha)
+					.add(DoubleVector.fromArray(SPECIES, y, yOff + i))
+					.intoArray(y, yOff + i);
+
+		super.axpy(alpha, x, xOff + i, y, yOff + i, length - i);
+
+	}
+
+	@Override
+	double dot(final double a[], final int aOff, final double b[],
+			final int bOff, final int length) {
+
+		final int bound = SPECIES.loopBound(length);
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		int i = 0;
+
+		for (; i < bound; i += SPECIES.length())
+			sum = DoubleVector.fromArray(SPECIES, a, aOff + i)
+					.mul(DoubleVector.fromArray(SPECIES, b, bOff + i)).add(sum);
+
+		return sum.reduceLanes(VectorOperators.ADD)
+				+ super.dot(a, aOff + i, b, bOff + i, length - i);
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.implement;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neural.ConcurrentHopfieldNetwork;
+import org.neural.HopfieldNetwork;
+import org.neural.UpdateOrder;
+import org.neural.WeightStorage;
+
+/**
+ * ConcurrentRecallCheck recalls noisy probes from a ConcurrentHopfieldNetwork
+ * on many threads at once, for every form of weight storage, and compares
+ * every output with the output of a plain HopfieldNetwork recalling the same
+ * probe alone. Readers of a concurrent network share one weight store, so
+ * any scratch state in a store shows up here as wrong outputs. <br/>
+ *
+ * Usage: ConcurrentRecallCheck [size] [threads] [probes per thread]
+ *
+ * @author Srijith Nair
+ *
+ */
+public class ConcurrentRecallCheck {
+
+	public static void main(String[] args) throws Exception {
+
+		final int size = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		final int probes = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+		final Random random = new Random(1);
+
+		// few enough patterns that factored weights stay factored
+		final boolean patterns[][] = new boolean[size / 20][size];
+		for (boolean pattern[] : patterns)
+			for (int j = 0; j < size; j++)
+				pattern[j] = random.nextBoolean();
+
+		final boolean noisy[][] = new boolean[threads * probes][];
+		for (int i = 0; i < noisy.length; i++) {
+			noisy[i] = patterns[i % patterns.length].clone();
+			for (int k = 0; k < size / 10; k++)
+				noisy[i][random.nextInt(size)] ^= true;
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		boolean failed = false;
+
+		for (WeightStorage storage : WeightStorage.values()) {
+
+			final HopfieldNetwork single = new HopfieldNetwork(size, storage);
+			final ConcurrentHopfieldNetwork shared = new ConcurrentHopfieldNetwork(
+					size, storage);
+
+			single.trainAll(patterns);
+			shared.trainAll(patterns);
+
+			final boolean presented[][] = new boolean[noisy.length][];
+			final boolean recalled[][] = new boolean[noisy.length][];
+
+			for (int i = 0; i < noisy.length; i++) {
+				presented[i] = single.present(noisy[i]);
+				recalled[i] = single.recall(noisy[i], UpdateOrder.SEQUENTIAL,
+						10);
+			}
+
+			final AtomicInteger wrong = new AtomicInteger();
+			final Future<?> running[] = new Future<?>[threads];
+
+			for (int t = 0; t < threads; t++) {
+				final int first = t * probes;
+				running[t] = pool.submit(() -> {
+					for (int i = first; i < first + probes; i++) {
+						if (!Arrays.equals(shared.present(noisy[i]),
+								presented[i]))
+							wrong.incrementAndGet();
+						if (!Arrays.equals(shared.recall(noisy[i],
+								UpdateOrder.SEQUENTIAL, 10), recalled[i]))
+							wrong.incrementAndGet();
+					}
+					return null;
+				});
+			}
+
+			for (Future<?> future : running)
+				future.get();
+
+			System.out.println(storage + ": " + wrong.get() + " of "
+					+ 2 * noisy.length + " outputs wrong");
+			failed |= wrong.get() > 0;
+
+		}
+
+		pool.shutdown();
+
+		if (failed)
+			System.exit(1);
+
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.implement;
+
+import org.util.Matrix;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.MatrixMath;
+import org.util.NotVectorException;
+
+/**
+ * MultiplyBenchmark compares the tiled multiplication kernel of MatrixMath
+ * against the original row-by-column dot product formulation, which extracts
+ * every row and column of the operands as a new matrix. <br/>
+ *
+ * Usage: MultiplyBenchmark [size] [rounds] [blockRows blockDepth blockCols]
+ *
+ * @author Srijith Nair
+ *
+ */
+public class MultiplyBenchmark {
+
+	/**
+	 * Multiply two matrices through one dot product of a row and a column per
+	 * element of the result, as MatrixMath used to do <br/>
+	 *
+	 * @param a
+	 *            pre-multiplication matrix
+	 * @param b
+	 *            post-multiplication matrix <br/>
+	 *
+	 * @return product matrix of a*b
+	 */
+	public static Matrix multiplyDotProduct(final Matrix a, final Matrix b)
+			throws MatrixIncompatibilityException,
+			MatrixIndexOutOfBoundsException, NotVectorException {
+
+		final Matrix res = new Matrix(a.getRows(), b.getCols());
+
+		for (int i = 0; i < a.getRows(); i++)
+			for (int j = 0; j < b.getCols(); j++)
+				res.set(i, j, MatrixMath.dotProduct(a.getRow(i), b.getCol(j)));
+
+		return res;
+
+	}
+
+	/**
+	 * Find the largest absolute difference between the elements of two
+	 * matrices of the same order <br/>
+	 *
+	 * @param a
+	 *            the first matrix
+	 * @param b
+	 *            the second matrix <br/>
+	 *
+	 * @return maximum of |a(i, j) - b(i, j)|
+	 */
+	public static double maxDifference(final Matrix a, final Matrix b) {
+
+		final double x[] = a.toPackedArray(), y[] = b.toPackedArray();
+		double max = 0;
+
+		for (int i = 0; i < x.length; i++)
+			max = Math.max(max, Math.abs(x[i] - y[i]));
+
+		return max;
+
+	}
+
+	public static void main(String[] args)
+			throws MatrixIncompatibilityException,
+			MatrixIndexOutOfBoundsException, NotVectorException {
+
+		final int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		if (args.length > 4)
+			MatrixMath.setBlockSizes(Integer.parseInt(args[2]),
+					Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+
+		final Matrix a = Matrix.randMatrix(size, size);
+		final Matrix b = Matrix.randMatrix(size, size);
+
+		Matrix expected = null, actual = null;
+		long dotTime = Long.MAX_VALUE, tiledTime = Long.MAX_VALUE;
+
+		// the first round warms up the JIT, keep the best of all rounds
+		for (int round = 0; round < rounds; round++) {
+
+			long start = System.nanoTime();
+			expected = multiplyDotProduct(a, b);
+			dotTime = Math.min(dotTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			actual = MatrixMath.multiply(a, b);
+			tiledTime = Math.min(tiledTime, System.nanoTime() - start);
+
+		}
+
+		final double flops = 2.0 * size * size * size;
+
+		System.out.printf("%dx%d multiply, best of %d rounds%n", size, size,
+				rounds);
+		System.out.printf("dot product: %10.2f ms %8.3f GFLOP/s%n",
+				dotTime / 1e6, flops / dotTime);
+		System.out.printf("tiled:       %10.2f ms %8.3f GFLOP/s%n",
+				tiledTime / 1e6, flops / tiledTime);
+		System.out.println("largest difference: "
+				+ maxDifference(expected, actual));
+
+	}
+
+}
@@ -0,0 +1,401 @@
+package org.neural;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.util.Matrix;
+
+/**
+ * ConcurrentHopfieldNetwork: a Hopfield network which many threads can recall
+ * from while another trains it. The weights are published as immutable
+ * snapshots in the manner of read-copy-update: training copies the current
+ * weights, trains the copy, and then swaps it in through a volatile
+ * reference, so every recall sees one complete version of the weights and
+ * never waits on a lock. <br/>
+ * 
+ * Writers are serialized with each other, and each training call copies the
+ * whole weight matrix once, so patterns are best trained in batches with
+ * {@link #trainAll(boolean[][])}. Readers allocate their own scratch vectors
+ * on every call, O(N) against the O(N<sup>2</sup>) of the recall itself. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public class ConcurrentHopfieldNetwork {
+
+	/*
+	 * A published version of the weights. The store is never changed once it
+	 * has been published, and the final fields make it safely visible to
+	 * every thread that reads the reference.
+	 */
+	private static final class Snapshot {
+
+		private final WeightStore weights;
+
+		private final long version;
+
+		private Snapshot(final WeightStore weights, final long version) {
+
+			this.weights = weights;
+			this.version = version;
+
+		}
+
+	}
+
+	// the current version of the weights, replaced as a whole on training
+	private volatile Snapshot snapshot;
+
+	// serializes the writers
+	private final Object writeLock = new Object();
+
+	// optional cache of the outputs of present, invalidated by the version
+	private volatile RecallCache cache;
+
+	public ConcurrentHopfieldNetwork(final int size) {
+		this(size, WeightStorage.DOUBLE);
+	}
+
+	/**
+	 * Create a network of the given size which holds its weights in the given
+	 * form. <br/>
+	 * 
+	 * @param size
+	 *            the number of neurons in the network
+	 * @param storage
+	 *            the form of the weight matrix
+	 */
+	public ConcurrentHopfieldNetwork(final int size, final WeightStorage storage) {
+		this.snapshot = new Snapshot(HopfieldNetwork.createStore(size, storage),
+				0);
+	}
+
+	/**
+	 * Get the size of this neural network <br/>
+	 * 
+	 * @return size of the neural network
+	 */
+	public int getSize() {
+
+		return snapshot.weights.getSize();
+
+	}
+
+	/**
+	 * Get the version of the weights that recall currently uses. The version
+	 * starts at zero and grows by one every time training publishes new
+	 * weights, so results recalled under one version stay valid until it
+	 * changes <br/>
+	 * 
+	 * @return version of the published weights
+	 */
+	public long getVersion() {
+
+		return snapshot.version;
+
+	}
+
+	/**
+	 * Get a copy of the current weight matrix of this neural network. Unlike
+	 * {@link HopfieldNetwork#getWeight()}, the matrix is always a copy, since
+	 * the published weights must not change <br/>
+	 * 
+	 * @return weight matrix of this Hopfield network
+	 */
+	public Matrix getWeight() {
+
+		final WeightStore weights = snapshot.weights;
+
+		// only the dense store hands out its own matrix
+		return weights instanceof DenseWeights ? weights.toMatrix().clone()
+				: weights.toMatrix();
+
+	}
+
+	/**
+	 * Set the cache consulted by {@link #present(boolean[])}. Entries belong
+	 * to the version of the weights they were recalled with, so publishing new
+	 * weights invalidates the cache, and readers still recalling with older
+	 * weights neither hit nor fill it <br/>
+	 * 
+	 * @param cache
+	 *            the cache to use, or null to recall every probe
+	 */
+	public void setRecallCache(final RecallCache cache) {
+
+		this.cache = cache;
+
+	}
+
+	/**
+	 * Get the cache consulted by {@link #present(boolean[])} <br/>
+	 * 
+	 * @return the recall cache, or null if there is none
+	 */
+	public RecallCache getRecallCache() {
+
+		return this.cache;
+
+	}
+
+	/**
+	 * Present a boolean array pattern to the current weights, as
+	 * {@link HopfieldNetwork#present(boolean[])} does <br/>
+	 * 
+	 * @param pattern
+	 *            the boolean pattern presented to the network <br/>
+	 * @return The output of the network (response to pattern) <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public boolean[] present(final boolean[] pattern)
+			throws HopfieldNetworkException {
+
+		final RecallCache cache = this.cache;
+
+		if (cache == null)
+			return reader().present(pattern);
+
+		// recall and cache with one version, even if another is published
+		final Snapshot current = snapshot;
+
+		if (pattern.length != current.weights.getSize())
+			throw new HopfieldNetworkException();
+
+		final boolean cached[] = cache.get(pattern, current.version);
+
+		if (cached != null)
+			return cached;
+
+		final boolean output[] = new HopfieldNetwork(current.weights)
+				.present(pattern);
+
+		cache.put(pattern, output, current.version);
+
+		return output;
+
+	}
+
+	/**
+	 * Present a batch of patterns to the current weights, as
+	 * {@link HopfieldNetwork#presentBatch(boolean[][])} does. All patterns of
+	 * the batch are recalled with the same version of the weights <br/>
+	 * 
+	 * @param patterns
+	 *            the boolean patterns presented to the network <br/>
+	 * @return The outputs of the network, one per pattern <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the length of any pattern is unequal to the number of
+	 *             neurons in the network
+	 */
+	public boolean[][] presentBatch(final boolean[][] patterns)
+			throws HopfieldNetworkException {
+
+		return reader().presentBatch(patterns);
+
+	}
+
+	/**
+	 * Recall by asynchronous updates with the current weights, as
+	 * {@link HopfieldNetwork#recall(boolean[], UpdateOrder, int)} does <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param order
+	 *            the order in which each sweep visits the neurons
+	 * @param maxSweeps
+	 *            the largest number of sweeps to run <br/>
+	 * @return The state of the network when recall stops <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public boolean[] recall(final boolean[] pattern, final UpdateOrder order,
+			final int maxSweeps) throws HopfieldNetworkException {
+
+		return reader().recall(pattern, order, maxSweeps);
+
+	}
+
+	/**
+	 * Recall by asynchronous updates with the current weights, tracking the
+	 * energy, as {@link HopfieldNetwork#recallWithEnergy} does <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param order
+	 *            the order in which each sweep visits the neurons
+	 * @param maxSweeps
+	 *            the largest number of sweeps to run
+	 * @param random
+	 *            the source of random update orders <br/>
+	 * @return The final state, the number of sweeps run, whether the network
+	 *         reached a fixed point, and the energy after every sweep <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public RecallResult recallWithEnergy(final boolean[] pattern,
+			final UpdateOrder order, final int maxSweeps, final Random random)
+			throws HopfieldNetworkException {
+
+		return reader().recallWithEnergy(pattern, order, maxSweeps, random);
+
+	}
+
+	/**
+	 * Recall by synchronous updates with the current weights, as
+	 * {@link HopfieldNetwork#recallSynchronous(boolean[], int, ForkJoinPool)}
+	 * does <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param maxSteps
+	 *            the largest number of steps to take
+	 * @param pool
+	 *            the pool whose threads update the neurons, or null to update
+	 *            them all on the calling thread <br/>
+	 * @return The final state, the number of steps taken, whether the network
+	 *         reached a fixed point or a cycle, and the energy after every
+	 *         step <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public RecallResult recallSynchronous(final boolean[] pattern,
+			final int maxSteps, final ForkJoinPool pool)
+			throws HopfieldNetworkException {
+
+		return reader().recallSynchronous(pattern, maxSteps, pool);
+
+	}
+
+	/**
+	 * Compute the energy of a state under the current weights, as
+	 * {@link HopfieldNetwork#energy(boolean[])} does <br/>
+	 * 
+	 * @param pattern
+	 *            the state of the network <br/>
+	 * @return The energy of the state <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public double energy(final boolean[] pattern)
+			throws HopfieldNetworkException {
+
+		return reader().energy(pattern);
+
+	}
+
+	/**
+	 * Train the network for remembering a given pattern and publish the new
+	 * weights. Recalls running meanwhile finish with the weights they
+	 * started with <br/>
+	 * 
+	 * @param pattern
+	 *            the pattern which the network has to remember. <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             the input pattern
+	 */
+	public void train(final boolean[] pattern) throws HopfieldNetworkException {
+
+		synchronized (writeLock) {
+			final HopfieldNetwork writer = writer();
+			writer.train(pattern);
+			publish(writer);
+		}
+
+	}
+
+	/**
+	 * Train the network for remembering a batch of patterns, as
+	 * {@link HopfieldNetwork#trainAll(boolean[][])} does, and publish the new
+	 * weights once for the whole batch <br/>
+	 * 
+	 * @param patterns
+	 *            the patterns which the network has to remember <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             any of the patterns, in which case nothing is published
+	 */
+	public void trainAll(final boolean[][] patterns)
+			throws HopfieldNetworkException {
+
+		synchronized (writeLock) {
+			final HopfieldNetwork writer = writer();
+			writer.trainAll(patterns);
+			publish(writer);
+		}
+
+	}
+
+	/**
+	 * Train the network with patterns arriving in chunks, publishing the new
+	 * weights after every chunk, so that recall picks up each chunk as soon
+	 * as it is trained <br/>
+	 * 
+	 * @param chunks
+	 *            the chunks of patterns which the network has to remember <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             a pattern; the chunks before the offending one stay
+	 *             published
+	 */
+	public void trainAll(final Iterator<boolean[][]> chunks)
+			throws HopfieldNetworkException {
+
+		while (chunks.hasNext())
+			trainAll(chunks.next());
+
+	}
+
+	/*
+	 * Apply an update to a private copy of the current weights and publish
+	 * the result as the next version, serialized with the other writers
+	 */
+	void update(final Consumer<WeightStore> update) {
+
+		synchronized (writeLock) {
+			final WeightStore weights = snapshot.weights.copy();
+			update.accept(weights);
+			snapshot = new Snapshot(weights, snapshot.version + 1);
+		}
+
+	}
+
+	// a network over the current weights with scratch of its own
+	private HopfieldNetwork reader() {
+
+		return new HopfieldNetwork(snapshot.weights);
+
+	}
+
+	// a network over a private copy of the current weights
+	private HopfieldNetwork writer() {
+
+		return new HopfieldNetwork(snapshot.weights.copy());
+
+	}
+
+	// publish the weights of a writer as the next version
+	private void publish(final HopfieldNetwork writer) {
+
+		snapshot = new Snapshot(writer.getStore(), snapshot.version + 1);
+
+	}
+
+}
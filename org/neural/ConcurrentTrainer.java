@@ -0,0 +1,214 @@
+package org.neural;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.util.BiPolarUtil;
+import org.util.Matrix;
+
+/**
+ * ConcurrentTrainer: takes patterns to be trained into a
+ * ConcurrentHopfieldNetwork from many producer threads at once. Every thread
+ * adds its patterns to one of several stripes, handed out to the threads in
+ * turn, and each stripe has a lock, a buffer of pending patterns and a
+ * weight-delta accumulator of its own. A full buffer is folded into the
+ * accumulator of its stripe with a single matrix product, so producers on
+ * different stripes neither wait for each other nor for the network. <br/>
+ * 
+ * {@link #merge()} adds the accumulators of all stripes to the weights of
+ * the network, stripe by stripe in index order, and publishes them as one
+ * new version. Hebbian contributions are sums of integers, which doubles
+ * hold exactly, so the merged weights do not depend on how the patterns were
+ * spread over stripes or in which order they arrived. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public class ConcurrentTrainer {
+
+	// the most stripes the default constructor creates, bounding memory
+	private static final int DEFAULT_STRIPES = 4;
+
+	/*
+	 * A stripe: the patterns added since its last fold, and the summed
+	 * contributions of the patterns folded since the last merge. All fields
+	 * are guarded by the stripe itself.
+	 */
+	private static final class Stripe {
+
+		private final double buffer[];
+
+		private int buffered;
+
+		// created on the first fold, since it takes N^2 doubles
+		private DenseWeights delta;
+
+		private int folded;
+
+		private Stripe(final int capacity) {
+
+			this.buffer = new double[capacity];
+
+		}
+
+	}
+
+	private final ConcurrentHopfieldNetwork network;
+
+	private final Stripe stripes[];
+
+	private final int size, batchSize;
+
+	// the stripe of each thread, handed out round robin
+	private final AtomicInteger nextStripe = new AtomicInteger();
+
+	private final ThreadLocal<Stripe> stripeOfThread;
+
+	/**
+	 * Create a trainer with one stripe per available processor, but at most
+	 * 4, folding every 64 patterns of a stripe. Every stripe which has folded
+	 * patterns holds an N x N accumulator of doubles, so the trainer takes up
+	 * to 4 * 8N<sup>2</sup> bytes besides the network <br/>
+	 * 
+	 * @param network
+	 *            the network which merges train
+	 */
+	public ConcurrentTrainer(final ConcurrentHopfieldNetwork network) {
+		this(network, Math.min(DEFAULT_STRIPES, Runtime.getRuntime()
+				.availableProcessors()), 64);
+	}
+
+	/**
+	 * Create a trainer with the given number of stripes. Every stripe which
+	 * has folded patterns holds an N x N accumulator of doubles, so the
+	 * trainer takes up to stripes * 8N<sup>2</sup> bytes besides the network,
+	 * and a buffer of batchSize * 8N bytes per stripe <br/>
+	 * 
+	 * @param network
+	 *            the network which merges train
+	 * @param stripes
+	 *            the number of stripes, each of which holds an N x N
+	 *            accumulator once it has folded patterns
+	 * @param batchSize
+	 *            the number of patterns buffered by a stripe before they are
+	 *            folded into its accumulator
+	 */
+	public ConcurrentTrainer(final ConcurrentHopfieldNetwork network,
+			final int stripes, final int batchSize) {
+
+		if (stripes < 1 || batchSize < 1)
+			throw new IllegalArgumentException("stripes and batch size must"
+					+ " be positive");
+
+		this.network = network;
+		this.size = network.getSize();
+		this.batchSize = batchSize;
+		this.stripes = new Stripe[stripes];
+
+		for (int i = 0; i < stripes; i++)
+			this.stripes[i] = new Stripe(batchSize * size);
+
+		this.stripeOfThread = ThreadLocal.withInitial(() -> this.stripes[Math
+				.floorMod(nextStripe.getAndIncrement(), stripes)]);
+
+	}
+
+	/**
+	 * Add a pattern to be trained into the network at the next merge. This
+	 * may be called from any number of threads at once <br/>
+	 * 
+	 * @param pattern
+	 *            the pattern which the network has to remember <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             the pattern
+	 */
+	public void train(final boolean[] pattern) throws HopfieldNetworkException {
+
+		if (pattern.length != size)
+			throw new HopfieldNetworkException();
+
+		final Stripe stripe = stripeOfThread.get();
+
+		synchronized (stripe) {
+			final int base = stripe.buffered * size;
+
+			for (int j = 0; j < size; j++)
+				stripe.buffer[base + j] = BiPolarUtil.bipolar2double(pattern[j]);
+
+			if (++stripe.buffered == batchSize)
+				fold(stripe);
+		}
+
+	}
+
+	/**
+	 * Train all patterns added so far into the network and publish its new
+	 * weights as a single version. Patterns added while the merge runs are
+	 * either part of it or left for the next merge <br/>
+	 * 
+	 * @return the number of patterns merged
+	 */
+	public int merge() {
+
+		// without pending patterns, keep the version and the recall caches
+		if (getPendingCount() == 0)
+			return 0;
+
+		final int merged[] = new int[1];
+
+		network.update(weights -> {
+			for (int i = 0; i < stripes.length; i++)
+				synchronized (stripes[i]) {
+					final Stripe stripe = stripes[i];
+
+					fold(stripe);
+
+					if (stripe.folded == 0)
+						continue;
+
+					weights.add(stripe.delta.toMatrix(), stripe.folded);
+					stripe.delta.toMatrix().clear();
+					merged[0] += stripe.folded;
+					stripe.folded = 0;
+				}
+		});
+
+		return merged[0];
+
+	}
+
+	/**
+	 * Get the number of patterns added but not yet merged into the network <br/>
+	 * 
+	 * @return the number of pending patterns
+	 */
+	public int getPendingCount() {
+
+		int pending = 0;
+
+		for (final Stripe stripe : stripes)
+			synchronized (stripe) {
+				pending += stripe.buffered + stripe.folded;
+			}
+
+		return pending;
+
+	}
+
+	// fold the buffered patterns of a stripe into its accumulator
+	private void fold(final Stripe stripe) {
+
+		if (stripe.buffered == 0)
+			return;
+
+		if (stripe.delta == null)
+			stripe.delta = new DenseWeights(size);
+
+		stripe.delta.trainAll(new Matrix(stripe.buffered, size, stripe.buffer));
+		stripe.folded += stripe.buffered;
+		stripe.buffered = 0;
+
+	}
+
+}
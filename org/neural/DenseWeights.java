@@ -0,0 +1,190 @@
+package org.neural;
+
+import org.util.Matrix;
+import org.util.MatrixAliasingException;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.MatrixMath;
+import org.util.NotVectorException;
+
+/**
+ * DenseWeights: stores the weights of a Hopfield network in a full N x N
+ * double matrix. This is the only store which can hold arbitrary real
+ * weights, so it is the one to use with learning rules other than the
+ * Hebbian rule, and the one whose matrix callers may edit directly. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class DenseWeights extends WeightStore {
+
+	private final Matrix weightMatrix;
+
+	DenseWeights(final int size) {
+
+		this.weightMatrix = new Matrix(size, size);
+
+	}
+
+	DenseWeights(final Matrix weightMatrix) {
+
+		this.weightMatrix = weightMatrix;
+
+	}
+
+	@Override
+	int getSize() {
+
+		return weightMatrix.getRows();
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields) {
+
+		// the weights are symmetric, so the columns are read as rows
+		try {
+			MatrixMath.vectorMultiply(state, this.weightMatrix, fields, true);
+		} catch (MatrixIncompatibilityException | NotVectorException
+				| MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields, final int from,
+			final int to) {
+
+		final double h[] = fields.getData();
+
+		try {
+			for (int i = from; i < to; i++)
+				h[i] = MatrixMath.dotProduct(weightMatrix.rowView(i), state);
+		} catch (MatrixIncompatibilityException | NotVectorException
+				| MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Compute the local fields of a batch of states as the single product SW
+	 * with the tiled and parallel multiplication kernel, so each tile of the
+	 * weights is read once for the whole batch instead of once per state. The
+	 * weights are symmetric, so row i of SW holds the fields W s<sub>i</sub>.
+	 */
+	@Override
+	void localFieldsBatch(final Matrix states, final Matrix fields) {
+
+		try {
+			MatrixMath.multiply(states, this.weightMatrix, fields);
+		} catch (MatrixIncompatibilityException | MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void addWeights(final int neuron, final double alpha,
+			final double fields[]) {
+
+		// the weights are symmetric, so the column is read as a row
+		final double data[] = weightMatrix.getData();
+		final int base = weightMatrix.getOffset() + neuron
+				* weightMatrix.getStride(), step = weightMatrix.getColStride();
+
+		for (int i = 0; i < fields.length; i++)
+			fields[i] += alpha * data[base + i * step];
+
+	}
+
+	@Override
+	void train(final Matrix pattern) {
+
+		/*
+		 * add the outer product of the bipolar pattern with itself to the
+		 * weights, leaving out the diagonal because no neuron in the network
+		 * is connected to itself
+		 */
+		try {
+			MatrixMath.rankOneUpdate(this.weightMatrix, 1, pattern, pattern,
+					true);
+		} catch (MatrixIncompatibilityException | NotVectorException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	/**
+	 * Train a batch of patterns with a single matrix product: the weights
+	 * grow by P<sup>T</sup>P, the sum of the outer products of all patterns,
+	 * computed by the tiled and parallel multiplication kernel. The diagonal
+	 * of P<sup>T</sup>P is the number of patterns, which training would
+	 * cancel with the identity once per pattern, so it is restored instead.
+	 */
+	@Override
+	void trainAll(final Matrix patterns) {
+
+		final int size = getSize();
+		final double diagonal[] = new double[size];
+		final double data[] = weightMatrix.getData();
+		final int off = weightMatrix.getOffset(), step = weightMatrix
+				.getStride() + weightMatrix.getColStride();
+
+		for (int i = 0; i < size; i++)
+			diagonal[i] = data[off + i * step];
+
+		try {
+			MatrixMath.multiplyAdd(patterns.transposeView(), patterns,
+					this.weightMatrix);
+		} catch (MatrixIncompatibilityException | MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+		for (int i = 0; i < size; i++)
+			data[off + i * step] = diagonal[i];
+
+	}
+
+	@Override
+	void add(final Matrix delta, final int patterns) {
+
+		try {
+			MatrixMath.add(this.weightMatrix, delta, this.weightMatrix);
+		} catch (MatrixIncompatibilityException | MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	double getWeight(final int row, final int col) {
+
+		double weight = 0;
+
+		try {
+			weight = weightMatrix.getElement(row, col);
+		} catch (MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+		return weight;
+
+	}
+
+	@Override
+	WeightStore copy() {
+
+		return new DenseWeights(weightMatrix.clone());
+
+	}
+
+	@Override
+	Matrix toMatrix() {
+
+		return this.weightMatrix;
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.neural;
+
+/**
+ * EvictionPolicy: the ways a RecallCache chooses the entry to drop when it is
+ * full. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public enum EvictionPolicy {
+
+	/**
+	 * Drop the least recently used entry. Cheap, but a burst of probes seen
+	 * only once flushes out the frequently repeated ones.
+	 */
+	LRU,
+
+	/**
+	 * Window TinyLFU: new entries enter a small LRU window, and an entry
+	 * leaving the window only displaces an entry of the main area if it has
+	 * been probed more often, as estimated by a compact frequency sketch. Keeps
+	 * the frequently repeated probes through bursts of one-off ones.
+	 */
+	TINY_LFU
+
+}
@@ -0,0 +1,296 @@
+package org.neural;
+
+import java.util.Arrays;
+
+import org.util.Matrix;
+import org.util.MatrixAliasingException;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.MatrixMath;
+import org.util.NotVectorException;
+
+/**
+ * FactoredWeights: stores the Hebbian weights of a Hopfield network as the
+ * P x N matrix of the patterns trained, from which the weights follow as
+ * W = P<sup>T</sup>P - pI. The local fields of a state s are computed as
+ * P<sup>T</sup>(Ps) - ps in O(NP) time, and the store takes NP doubles
+ * instead of N<sup>2</sup>, which for P much smaller than N saves nearly all
+ * of both. All products are sums of integers, so recall gives exactly the
+ * results of the dense weights. <br/>
+ * 
+ * Once more than N / 2 patterns have been trained, the factors take more
+ * memory and time than the dense matrix, so the store expands them into a
+ * DenseWeights and delegates to it from then on. It expands as well when
+ * the factors would outgrow the largest array, and fails then only if the
+ * dense matrix cannot be held either. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class FactoredWeights extends WeightStore {
+
+	private final int size;
+
+	// the patterns row after row, with room to grow; null once dense
+	private double patterns[];
+
+	// number of patterns held
+	private int rows;
+
+	// the dense weights, once the factors have grown past the crossover
+	private DenseWeights dense;
+
+	FactoredWeights(final int size) {
+
+		this.size = size;
+		this.patterns = new double[0];
+
+	}
+
+	@Override
+	int getSize() {
+
+		return size;
+
+	}
+
+	/**
+	 * Check whether this store has switched to dense weights
+	 * 
+	 * @return true once the weights are held as an N x N matrix
+	 */
+	boolean isDense() {
+
+		return dense != null;
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields) {
+
+		if (dense != null) {
+			dense.localFields(state, fields);
+			return;
+		}
+
+		if (rows == 0) {
+			fields.clear();
+			return;
+		}
+
+		// the products are per call, since readers may share this store
+		final Matrix c = projections(state, new double[rows]);
+
+		try {
+			// P^T (P s) is the combination of the patterns weighted by Ps
+			MatrixMath.vectorMultiply(c, factors(), fields, false);
+		} catch (MatrixIncompatibilityException | NotVectorException
+				| MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+		final double s[] = state.getData(), h[] = fields.getData();
+
+		for (int i = 0; i < size; i++)
+			h[i] -= rows * s[i];
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields, final int from,
+			final int to) {
+
+		if (dense != null) {
+			dense.localFields(state, fields, from, to);
+			return;
+		}
+
+		prepare(state).localFields(fields, from, to);
+
+	}
+
+	@Override
+	RangeFields prepare(final Matrix state) {
+
+		if (dense != null)
+			return dense.prepare(state);
+
+		// Ps is shared by every range, so it is computed once per state
+		final double patterns[] = this.patterns;
+		final int rows = this.rows;
+		final double c[] = projections(state, new double[rows]).getData();
+		final double s[] = state.getData();
+
+		return (fields, from, to) -> {
+			final double h[] = fields.getData();
+			for (int i = from; i < to; i++) {
+				double sum = 0;
+				for (int k = 0; k < rows; k++)
+					sum += patterns[k * size + i] * c[k];
+				h[i] = sum - rows * s[i];
+			}
+		};
+
+	}
+
+	@Override
+	long workPerNeuron() {
+
+		// the ranges take P operations per neuron once Ps is known
+		return dense != null ? dense.workPerNeuron() : Math.max(1, rows);
+
+	}
+
+	@Override
+	void addWeights(final int neuron, final double alpha,
+			final double fields[]) {
+
+		if (dense != null) {
+			dense.addWeights(neuron, alpha, fields);
+			return;
+		}
+
+		// column neuron of P^T P is the patterns weighted by their element
+		for (int k = 0; k < rows; k++) {
+			final double weight = alpha * patterns[k * size + neuron];
+			final int base = k * size;
+			for (int i = 0; i < size; i++)
+				fields[i] += weight * patterns[base + i];
+		}
+
+		fields[neuron] -= alpha * rows;
+
+	}
+
+	@Override
+	void train(final Matrix pattern) {
+
+		trainAll(pattern);
+
+	}
+
+	@Override
+	void trainAll(final Matrix batch) {
+
+		// past N / 2 patterns, or past the largest array, the factors lose
+		if (dense == null
+				&& (rows + batch.getRows() > size / 2 || (long) (rows + batch
+						.getRows()) * size > Matrix.MAX_ELEMENTS))
+			expand();
+
+		if (dense != null) {
+			dense.trainAll(batch);
+			return;
+		}
+
+		final int count = batch.getRows();
+
+		final int needed = (rows + count) * size;
+
+		if (needed > patterns.length)
+			patterns = Arrays.copyOf(patterns, (int) Math.min(
+					Matrix.MAX_ELEMENTS,
+					Math.max(needed, 2L * patterns.length)));
+
+		System.arraycopy(batch.getData(), 0, patterns, rows * size, count
+				* size);
+		rows += count;
+
+	}
+
+	@Override
+	void add(final Matrix delta, final int count) {
+
+		// a sum of outer products cannot be factored back into patterns
+		if (dense == null)
+			expand();
+
+		dense.add(delta, count);
+
+	}
+
+	@Override
+	double getWeight(final int row, final int col) {
+
+		if (dense != null)
+			return dense.getWeight(row, col);
+
+		if (row == col)
+			return 0;
+
+		double weight = 0;
+
+		for (int k = 0; k < rows; k++)
+			weight += patterns[k * size + row] * patterns[k * size + col];
+
+		return weight;
+
+	}
+
+	@Override
+	WeightStore copy() {
+
+		final FactoredWeights copy = new FactoredWeights(size);
+
+		copy.rows = rows;
+
+		if (dense != null)
+			copy.dense = (DenseWeights) dense.copy();
+		else
+			copy.patterns = Arrays.copyOf(patterns, rows * size);
+
+		return copy;
+
+	}
+
+	@Override
+	Matrix toMatrix() {
+
+		// a copy even when dense, since only DOUBLE weights are handed out
+		if (dense != null)
+			return dense.toMatrix().clone();
+
+		final DenseWeights weights = new DenseWeights(size);
+
+		if (rows > 0)
+			weights.trainAll(factors());
+
+		return weights.toMatrix();
+
+	}
+
+	// the patterns as a P x N matrix over the factor storage
+	private Matrix factors() {
+
+		return new Matrix(rows, size, patterns);
+
+	}
+
+	// the product Ps of the patterns with a state, computed into c
+	private Matrix projections(final Matrix state, final double c[]) {
+
+		final Matrix result = new Matrix(1, rows, c), factors = factors();
+
+		try {
+			for (int k = 0; k < rows; k++)
+				c[k] = MatrixMath.dotProduct(factors.rowView(k), state);
+		} catch (MatrixIncompatibilityException | NotVectorException
+				| MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+		return result;
+
+	}
+
+	// switch to dense weights, trained from the factors
+	private void expand() {
+
+		dense = new DenseWeights(size);
+		if (rows > 0)
+			dense.trainAll(factors());
+		patterns = null;
+
+	}
+
+}
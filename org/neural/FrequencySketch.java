@@ -0,0 +1,90 @@
+package org.neural;
+
+/**
+ * FrequencySketch: a count-min sketch estimating how often each key has been
+ * seen recently, for the admission decisions of a TinyLFU cache. Every key
+ * increments four 8-bit counters picked by four hashes, and its frequency is
+ * estimated by the smallest of them; counters saturate at 15. Once ten times
+ * as many keys have been recorded as the cache holds entries, all counters
+ * are halved, so that old popularity fades. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class FrequencySketch {
+
+	private static final int MAX_COUNT = 15;
+
+	private final byte counters[];
+
+	private final int mask;
+
+	// number of increments after which all counters are halved
+	private final int sampleSize;
+
+	private int additions;
+
+	FrequencySketch(final int capacity) {
+
+		// a power of two of at least four counters per entry
+		final int length = Integer.highestOneBit(Math.max(16,
+				Math.min(1 << 28, capacity) * 4 - 1) << 1);
+
+		this.counters = new byte[length];
+		this.mask = length - 1;
+		this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * capacity);
+
+	}
+
+	/**
+	 * Estimate the number of times a key has been recorded recently
+	 * 
+	 * @param hash
+	 *            the hash code of the key
+	 * 
+	 * @return the estimated frequency, at most 15
+	 */
+	int frequency(final int hash) {
+
+		int min = MAX_COUNT;
+
+		for (int i = 0; i < 4; i++)
+			min = Math.min(min, counters[index(hash, i)]);
+
+		return min;
+
+	}
+
+	/**
+	 * Record one occurrence of a key
+	 * 
+	 * @param hash
+	 *            the hash code of the key
+	 */
+	void increment(final int hash) {
+
+		for (int i = 0; i < 4; i++) {
+			final int index = index(hash, i);
+			if (counters[index] < MAX_COUNT)
+				counters[index]++;
+		}
+
+		if (++additions >= sampleSize) {
+			for (int i = 0; i < counters.length; i++)
+				counters[i] >>= 1;
+			additions /= 2;
+		}
+
+	}
+
+	// the counter of a key in row i, from a differently seeded mix per row
+	private int index(final int hash, final int i) {
+
+		long h = (hash + (i + 1) * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 31;
+
+		return (int) h & mask;
+
+	}
+
+}
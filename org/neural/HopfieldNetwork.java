@@ -1,5 +1,15 @@
 package org.neural;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.util.*;
 
 /**
@@ -16,23 +26,267 @@ public class HopfieldNetwork {
 	/**
 	 * The weight matrix of the neural network. Cannot be directly accessed,
 	 * since it is private. The weight matrix stores the values of weights of
-	 * each connection in the network.
+	 * each connection in the network, in the form chosen when the network is
+	 * created.
 	 * 
 	 * The inputs and outputs to the Hopfield network are always boolean values.
 	 */
-	private Matrix weightMatrix;
+	private final WeightStore weights;
+
+	/*
+	 * Scratch row vectors reused by every call to present: the bipolar form
+	 * of the input pattern, and the field computed at each neuron
+	 */
+	private final Matrix inputBuffer, fieldBuffer;
+
+	/*
+	 * Bit planes of the weights for recall of bit-packed patterns, built on
+	 * first use and dropped whenever the weights may have changed
+	 */
+	private BitPlaneMatrix packedWeights;
+
+	// scratch local fields of the bit-packed recall
+	private final long packedFields[];
+
+	/*
+	 * Version of the weights, raised whenever they may have changed, and the
+	 * optional cache of outputs of present, which the version invalidates
+	 */
+	private long version;
+
+	private RecallCache cache;
 
 	public HopfieldNetwork(final int size) {
-		weightMatrix = new Matrix(size, size);
+		this(size, WeightStorage.DOUBLE);
+	}
+
+	/**
+	 * Create a network of the given size which holds its weights in the given
+	 * form. <br/>
+	 * 
+	 * @param size
+	 *            the number of neurons in the network
+	 * @param storage
+	 *            the form of the weight matrix
+	 */
+	public HopfieldNetwork(final int size, final WeightStorage storage) {
+		this(createStore(size, storage));
+	}
+
+	/*
+	 * Create a network over the given store, which it trains and recalls
+	 * with; the store is not copied
+	 */
+	HopfieldNetwork(final WeightStore weights) {
+		final int size = weights.getSize();
+		this.weights = weights;
+		inputBuffer = new Matrix(1, size);
+		fieldBuffer = new Matrix(1, size);
+		packedFields = new long[size];
+	}
+
+	// create an empty store of the given size and form
+	static WeightStore createStore(final int size, final WeightStorage storage) {
+		switch (storage) {
+		case INTEGER:
+			return new IntegerWeights(size);
+		case SYMMETRIC:
+			return new SymmetricWeights(size);
+		case FACTORED:
+			return new FactoredWeights(size);
+		default:
+			return new DenseWeights(size);
+		}
+	}
+
+	/**
+	 * Create a network with the weights saved in a file, read onto the heap.
+	 * Files in the packed layout give a network with
+	 * {@link WeightStorage#SYMMETRIC} weights, and dense files one with
+	 * {@link WeightStorage#DOUBLE} weights. <br/>
+	 * 
+	 * @param path
+	 *            a file written by {@link #save(Path)} <br/>
+	 * @return The network with the weights in the file <br/>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, does not hold a square matrix,
+	 *             or fails its checksum
+	 */
+	public static HopfieldNetwork load(final Path path) throws IOException {
+		final MatrixFile file = openSquare(path);
+		if (file.getLayout() == MatrixFile.PACKED)
+			return new HopfieldNetwork(new SymmetricWeights(file.readPacked()));
+		return new HopfieldNetwork(new DenseWeights(file.readMatrix()));
+	}
+
+	/**
+	 * Create a network which uses the weights saved in a file in place, by
+	 * mapping the file into memory. This takes about the same time however
+	 * large the file, since the weights are paged in as recall first uses
+	 * them, and they need not fit on the heap. The mapping is private:
+	 * training the network changes its weights but never the file. A private
+	 * mapping still needs write access to the file; read-only files are
+	 * opened with {@link #openReadOnly(Path)}. Files in the packed layout
+	 * cannot be mapped, and are read as by load. The checksum is not checked;
+	 * see {@link MatrixFile#verify()}. <br/>
+	 * 
+	 * @param path
+	 *            a file written by {@link #save(Path)} <br/>
+	 * @return The network over the weights in the file <br/>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened for writing or mapped, or does
+	 *             not hold a square matrix
+	 */
+	public static HopfieldNetwork open(final Path path) throws IOException {
+		return open(path, FileChannel.MapMode.PRIVATE);
 	}
 
 	/**
-	 * Get the weight matrix of this neural network <br/>
+	 * Create a network which uses the weights saved in a file in place, as
+	 * {@link #open(Path)} does, but maps the file read-only, so only read
+	 * access to the file is needed. The network recalls as usual, and
+	 * training it throws {@link java.nio.ReadOnlyBufferException}. <br/>
+	 * 
+	 * @param path
+	 *            a file written by {@link #save(Path)} <br/>
+	 * @return The network over the weights in the file <br/>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be mapped or does not hold a square
+	 *             matrix
+	 */
+	public static HopfieldNetwork openReadOnly(final Path path)
+			throws IOException {
+		return open(path, FileChannel.MapMode.READ_ONLY);
+	}
+
+	private static HopfieldNetwork open(final Path path,
+			final FileChannel.MapMode mode) throws IOException {
+		final MatrixFile file = openSquare(path);
+		if (file.getLayout() == MatrixFile.PACKED)
+			return new HopfieldNetwork(new SymmetricWeights(file.readPacked()));
+		return new HopfieldNetwork(new MappedWeights(file.map(mode)));
+	}
+
+	private static MatrixFile openSquare(final Path path) throws IOException {
+		final MatrixFile file = MatrixFile.open(path);
+		if (file.getRows() != file.getCols())
+			throw new IOException(path + " does not hold a square matrix");
+		return file;
+	}
+
+	/**
+	 * Save the weights of this network to a file in the format of
+	 * {@link MatrixFile}, replacing the file if it exists. Networks with
+	 * {@link WeightStorage#SYMMETRIC} weights write the packed upper triangle,
+	 * all others the dense matrix. The file is replaced only once the new one
+	 * is complete, so a network opened from it may save over it. <br/>
+	 * 
+	 * @param path
+	 *            the file to write <br/>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save(final Path path) throws IOException {
+		this.weights.save(path);
+	}
+
+	/**
+	 * Write the weights of this network to a stream in the compact form of
+	 * {@link MatrixCodec}: Hebbian weights are integers, and take a byte or
+	 * two each instead of eight, which suits shipping a network to another
+	 * host. The stream is neither buffered nor closed. <br/>
+	 * 
+	 * @param out
+	 *            the stream to write to <br/>
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void encode(final OutputStream out) throws IOException {
+		this.weights.encode(out);
+	}
+
+	/**
+	 * Create a network with {@link WeightStorage#DOUBLE} weights read from a
+	 * stream written by {@link #encode(OutputStream)} <br/>
+	 * 
+	 * @param in
+	 *            the stream to read from <br/>
+	 * @return The network with the weights in the stream <br/>
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be read, or does not hold a square
+	 *             matrix
+	 */
+	public static HopfieldNetwork decode(final InputStream in)
+			throws IOException {
+		final Matrix mat = MatrixCodec.decode(in);
+		if (mat.getRows() != mat.getCols())
+			throw new IOException("stream does not hold a square matrix");
+		return new HopfieldNetwork(new DenseWeights(mat));
+	}
+
+	/**
+	 * Get the weight matrix of this neural network. Training keeps the
+	 * weights symmetric, and recall relies on it, so changes made to the
+	 * returned matrix should keep weight (i, j) equal to weight (j, i). Only
+	 * networks with {@link WeightStorage#DOUBLE} weights return their live
+	 * weight matrix; the others return a copy, and changes made to it do not
+	 * reach the network <br/>
 	 * 
 	 * @return weight matrix of this Hopfield network
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the weights, e.g. mapped ones, have more elements than an
+	 *             array can hold
 	 */
 	public Matrix getWeight() {
-		return this.weightMatrix;
+		// the caller may change the weights through the returned matrix
+		this.packedWeights = null;
+		this.version++;
+		return this.weights.toMatrix();
+	}
+
+	/**
+	 * Get the version of the weights of this network. The version grows
+	 * every time the network is trained, and every time getWeight() hands out
+	 * the weights, which may then be edited <br/>
+	 * 
+	 * @return version of the weights
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Set the cache consulted by {@link #present(boolean[])}, which stores the
+	 * output for each probe and answers repeated probes without recalling
+	 * them. The cache is invalidated by the version of the weights, so it
+	 * needs no attention when the network is trained <br/>
+	 * 
+	 * @param cache
+	 *            the cache to use, or null to recall every probe
+	 */
+	public void setRecallCache(final RecallCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Get the cache consulted by {@link #present(boolean[])} <br/>
+	 * 
+	 * @return the recall cache, or null if there is none
+	 */
+	public RecallCache getRecallCache() {
+		return this.cache;
+	}
+
+	// the store holding the weights, not copied
+	WeightStore getStore() {
+		return this.weights;
 	}
 
 	/**
@@ -42,8 +296,8 @@ public class HopfieldNetwork {
 	 */
 	public int getSize() {
 
-		// get the number of rows in weightMatrix
-		return weightMatrix.getRows();
+		// get the number of rows in the weight matrix
+		return weights.getSize();
 	}
 
 	/**
@@ -61,51 +315,375 @@ public class HopfieldNetwork {
 	public boolean[] present(final boolean[] pattern)
 			throws HopfieldNetworkException {
 
-		if (pattern.length != this.weightMatrix.getRows())
+		if (pattern.length != this.weights.getSize())
 			throw new HopfieldNetworkException();
 
+		final RecallCache cache = this.cache;
+
+		if (cache != null) {
+			final boolean cached[] = cache.get(pattern, this.version);
+			if (cached != null)
+				return cached;
+		}
+
 		final boolean output[] = new boolean[pattern.length];
 
 		// convert the array of input patterns into bipolar form
-		// store it in a row matrix
-		Matrix inputMatrix = Matrix.createRowMatrix(BiPolarUtil
-				.bipolar2double(pattern));
+		BiPolarUtil.bipolar2double(pattern, this.inputBuffer.getData());
 
 		/*
 		 * process the output at each individual neuron in the network the ouput
 		 * of a neuron is equal to the dot product of the pattern with each
 		 * column in the weight matrix of this neural network
 		 */
+		this.weights.localFields(this.inputBuffer, this.fieldBuffer);
+
+		final double dotProduct[] = this.fieldBuffer.getData();
+
 		for (int col = 0; col < pattern.length; col++) {
 
-			Matrix columnMatrix = null;
+			if (dotProduct[col] > 0)
+				output[col] = true;
+			else
+				output[col] = false;
 
-			// MatrixIndexOutOfBoundsException cannot occur if there is no
-			// HopfieldNetworkException
-			try {
-				columnMatrix = this.weightMatrix.getCol(col);
-			} catch (MatrixIndexOutOfBoundsException e) {
-				e.printStackTrace();
-			}
+		}
+
+		if (cache != null)
+			cache.put(pattern, output, this.version);
+
+		return output;
+
+	}
+
+	/**
+	 * Present a batch of patterns to the neural network and get back the
+	 * output for each, the same as calling present for every pattern in turn.
+	 * For networks with {@link WeightStorage#DOUBLE} weights the patterns are
+	 * stacked into one matrix and recalled with a single blocked, parallel
+	 * matrix product, which streams the weights from memory once per batch
+	 * instead of once per pattern. <br/>
+	 * 
+	 * @param patterns
+	 *            the boolean patterns presented to the network <br/>
+	 * @return The outputs of the network, one per pattern <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the length of any pattern is unequal to the number of
+	 *             neurons in the network
+	 */
+	public boolean[][] presentBatch(final boolean[][] patterns)
+			throws HopfieldNetworkException {
+
+		final int size = weights.getSize();
+
+		for (int i = 0; i < patterns.length; i++)
+			if (patterns[i].length != size)
+				throw new HopfieldNetworkException();
+
+		final boolean output[][] = new boolean[patterns.length][size];
+
+		if (patterns.length == 0)
+			return output;
+
+		final double states[] = new double[patterns.length * size];
+
+		for (int i = 0; i < patterns.length; i++)
+			for (int j = 0; j < size; j++)
+				states[i * size + j] = BiPolarUtil.bipolar2double(patterns[i][j]);
+
+		final Matrix fields = new Matrix(patterns.length, size);
+
+		this.weights.localFieldsBatch(new Matrix(patterns.length, size, states),
+				fields);
+
+		final double dotProduct[] = fields.getData();
+
+		for (int i = 0; i < patterns.length; i++)
+			for (int j = 0; j < size; j++)
+				output[i][j] = dotProduct[i * size + j] > 0;
+
+		return output;
+
+	}
+
+	/**
+	 * Recall the stored pattern nearest to a given one by updating one neuron
+	 * at a time until the network settles. Starting from the pattern, each
+	 * sweep visits every neuron in the given order and sets it to the sign of
+	 * its local field; recall stops after a sweep that changes no neuron, or
+	 * after maxSweeps sweeps. <br/>
+	 * 
+	 * The local fields are computed once, and whenever a neuron flips they
+	 * are brought up to date by adding its weights, times the change in its
+	 * state, in O(N). A sweep that flips k neurons thus costs O(N + kN)
+	 * rather than the O(N<sup>2</sup>) of presenting the pattern again. <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param order
+	 *            the order in which each sweep visits the neurons
+	 * @param maxSweeps
+	 *            the largest number of sweeps to run <br/>
+	 * @return The state of the network when recall stops <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public boolean[] recall(final boolean[] pattern, final UpdateOrder order,
+			final int maxSweeps) throws HopfieldNetworkException {
+
+		return recall(pattern, order, maxSweeps, new Random());
+
+	}
+
+	/**
+	 * Recall the stored pattern nearest to a given one by updating one neuron
+	 * at a time until the network settles, as {@link #recall(boolean[],
+	 * UpdateOrder, int)} does, drawing random update orders from the given
+	 * generator so that a recall can be repeated exactly <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param order
+	 *            the order in which each sweep visits the neurons
+	 * @param maxSweeps
+	 *            the largest number of sweeps to run
+	 * @param random
+	 *            the source of random update orders <br/>
+	 * @return The state of the network when recall stops <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public boolean[] recall(final boolean[] pattern, final UpdateOrder order,
+			final int maxSweeps, final Random random)
+			throws HopfieldNetworkException {
+
+		return recallWithEnergy(pattern, order, maxSweeps, random).getState();
+
+	}
+
+	/**
+	 * Recall the stored pattern nearest to a given one by updating one neuron
+	 * at a time, as {@link #recall(boolean[], UpdateOrder, int, Random)} does,
+	 * and track the energy of the state along the way. Flipping neuron i by d
+	 * changes the energy by -d h<sub>i</sub> - d<sup>2</sup> w<sub>ii</sub> /
+	 * 2, where h<sub>i</sub> is its local field before the flip, so the
+	 * energy is kept up to date in O(1) per flip, and the trajectory costs
+	 * nothing beyond the recall itself. <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param order
+	 *            the order in which each sweep visits the neurons
+	 * @param maxSweeps
+	 *            the largest number of sweeps to run
+	 * @param random
+	 *            the source of random update orders <br/>
+	 * @return The final state, the number of sweeps run, whether the network
+	 *         reached a fixed point, and the energy after every sweep <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public RecallResult recallWithEnergy(final boolean[] pattern,
+			final UpdateOrder order, final int maxSweeps, final Random random)
+			throws HopfieldNetworkException {
+
+		final int size = weights.getSize();
+
+		if (pattern.length != size)
+			throw new HopfieldNetworkException();
+
+		final Matrix state = new Matrix(1, size,
+				BiPolarUtil.bipolar2double(pattern));
+		final Matrix fields = new Matrix(1, size);
+		final double s[] = state.getData(), h[] = fields.getData();
+		final int visit[] = new int[size];
+
+		for (int i = 0; i < size; i++)
+			visit[i] = i;
 
-			double dotProduct = 0;
+		this.weights.localFields(state, fields);
 
-			// NotVectorException cannot occur here
-			// nor can MatrixIncompatibility occur if there is no
-			// HopfieldNetworkException
-			try {
-				dotProduct = MatrixMath.dotProduct(inputMatrix, columnMatrix);
-			} catch (MatrixIncompatibilityException | NotVectorException e) {
-				e.printStackTrace();
+		double energies[] = new double[Math.max(2, Math.min(maxSweeps, 64) + 1)];
+		double energy = WeightStore.energy(s, h);
+		int sweeps = 0;
+		boolean settled = false;
+
+		energies[0] = energy;
+
+		while (!settled && sweeps < maxSweeps) {
+
+			if (order == UpdateOrder.RANDOM)
+				for (int i = size - 1; i > 0; i--) {
+					final int j = random.nextInt(i + 1), t = visit[i];
+					visit[i] = visit[j];
+					visit[j] = t;
+				}
+
+			settled = true;
+
+			for (int k = 0; k < size; k++) {
+				final int i = visit[k];
+				final double next = h[i] > 0 ? 1 : -1;
+
+				if (next != s[i]) {
+					final double change = next - s[i];
+					energy -= change * h[i] + change * change
+							* this.weights.getWeight(i, i) / 2;
+					this.weights.addWeights(i, change, h);
+					s[i] = next;
+					settled = false;
+				}
 			}
 
-			if (dotProduct > 0)
-				output[col] = true;
-			else
-				output[col] = false;
+			if (++sweeps == energies.length)
+				energies = Arrays.copyOf(energies, 2 * energies.length);
+			energies[sweeps] = energy;
+
+		}
+
+		final boolean output[] = new boolean[size];
+
+		for (int i = 0; i < size; i++)
+			output[i] = s[i] > 0;
+
+		return new RecallResult(output, sweeps, settled ? 1 : 0,
+				Arrays.copyOf(energies, sweeps + 1));
+
+	}
+
+	/**
+	 * Compute the energy of a state of the network, E = -s<sup>T</sup>Ws / 2,
+	 * which never increases under asynchronous updates and is lowest at the
+	 * stored patterns, so that it ranks recall results and exposes spurious
+	 * attractors. The local fields Ws are computed into the scratch vectors of
+	 * the network, so nothing is allocated. <br/>
+	 * 
+	 * @param pattern
+	 *            the state of the network <br/>
+	 * @return The energy of the state <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public double energy(final boolean[] pattern)
+			throws HopfieldNetworkException {
+
+		if (pattern.length != weights.getSize())
+			throw new HopfieldNetworkException();
+
+		BiPolarUtil.bipolar2double(pattern, this.inputBuffer.getData());
+		this.weights.localFields(this.inputBuffer, this.fieldBuffer);
+
+		return WeightStore.energy(this.inputBuffer.getData(),
+				this.fieldBuffer.getData());
+
+	}
+
+	/**
+	 * Recall the stored pattern nearest to a given one by presenting the
+	 * network's output back to it until the state stops changing. Each step
+	 * updates all neurons together, as present does, with the neurons split
+	 * across the threads of the pool that MatrixMath uses. Recall stops at a
+	 * fixed point, at a state seen before (with symmetric weights, a 2-cycle
+	 * between two states), or after maxSteps steps. <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param maxSteps
+	 *            the largest number of steps to take <br/>
+	 * @return The final state, the number of steps taken, whether the network
+	 *         reached a fixed point or a cycle, and the energy after every
+	 *         step <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public RecallResult recallSynchronous(final boolean[] pattern,
+			final int maxSteps) throws HopfieldNetworkException {
+
+		return recallSynchronous(pattern, maxSteps, MatrixMath.getPool());
 
+	}
+
+	/**
+	 * Recall the stored pattern nearest to a given one by synchronous updates,
+	 * as {@link #recallSynchronous(boolean[], int)} does, splitting the
+	 * neurons of each step across the threads of the given pool. <br/>
+	 * 
+	 * @param pattern
+	 *            the initial state of the network <br/>
+	 * @param maxSteps
+	 *            the largest number of steps to take
+	 * @param pool
+	 *            the pool whose threads update the neurons, or null to update
+	 *            them all on the calling thread <br/>
+	 * @return The final state, the number of steps taken, whether the network
+	 *         reached a fixed point or a cycle, and the energy after every
+	 *         step <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public RecallResult recallSynchronous(final boolean[] pattern,
+			final int maxSteps, final ForkJoinPool pool)
+			throws HopfieldNetworkException {
+
+		if (pattern.length != weights.getSize())
+			throw new HopfieldNetworkException();
+
+		return SynchronousRecall.run(this.weights,
+				BiPolarUtil.bipolar2double(pattern), maxSteps, pool);
+
+	}
+
+	/**
+	 * Present a bit-packed pattern to the neural network and get back the
+	 * resulting output as a bit-packed pattern. The local field of each
+	 * neuron is computed with XNOR and popcount over bit planes of the
+	 * weights instead of multiply-adds over doubles, so this is exact for
+	 * the integer weights that training produces. The bit planes are built
+	 * on the first call after the weights change. <br/>
+	 * 
+	 * @param pattern
+	 *            the bit-packed pattern presented to the network <br/>
+	 * @return The output of the network (response to pattern) <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the pattern length is unequal to the number of neurons in
+	 *             the network
+	 */
+	public BitPattern present(final BitPattern pattern)
+			throws HopfieldNetworkException {
+
+		if (pattern.getLength() != this.weights.getSize())
+			throw new HopfieldNetworkException();
+
+		final BitPattern output = new BitPattern(pattern.getLength());
+
+		try {
+			if (this.packedWeights == null)
+				this.packedWeights = new BitPlaneMatrix(this.weights.toMatrix());
+
+			// rows stand in for columns since the weights are symmetric
+			this.packedWeights.multiply(pattern, this.packedFields);
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
 		}
 
+		for (int col = 0; col < pattern.getLength(); col++)
+			if (this.packedFields[col] > 0)
+				output.set(col, true);
+
 		return output;
 
 	}
@@ -123,32 +701,74 @@ public class HopfieldNetwork {
 	 */
 	public void train(final boolean[] pattern) throws HopfieldNetworkException {
 
-		if (pattern.length != weightMatrix.getRows())
+		if (pattern.length != weights.getSize())
 			throw new HopfieldNetworkException();
 
-		Matrix contributionMatrix = new Matrix(weightMatrix.getRows(),
-				weightMatrix.getRows());
+		final double input[] = BiPolarUtil.bipolar2double(pattern);
 
-		final Matrix rowMatrix = Matrix.createRowMatrix(BiPolarUtil
-				.bipolar2double(pattern));
-		final Matrix columnMatrix = MatrixMath.transpose(rowMatrix);
+		this.weights.train(new Matrix(1, input.length, input));
+		this.packedWeights = null;
+		this.version++;
 
-		try {
-			contributionMatrix = MatrixMath.multiply(columnMatrix, rowMatrix);
-
-			/*
-			 * subtract identity matrix from the resultant square contribution
-			 * matrix because no neuron in the network is connected to itself
-			 */
-			contributionMatrix = MatrixMath.subtract(contributionMatrix,
-					MatrixMath.identity(contributionMatrix.getRows()));
-
-			// add the contribution matrix to this weightMatrix
-			this.weightMatrix = MatrixMath.add(contributionMatrix,
-					this.weightMatrix);
-		} catch (MatrixIncompatibilityException e) {
-			e.printStackTrace();
-		}
+	}
+
+	/**
+	 * Train the Hopfield network for remembering a batch of patterns at once.
+	 * The result is the same as calling train for each pattern, but the
+	 * patterns are stacked into one matrix P, and networks with
+	 * {@link WeightStorage#DOUBLE} weights add P<sup>T</sup>P - p*I to the
+	 * weights with a single blocked, parallel matrix product. <br/>
+	 * 
+	 * @param patterns
+	 *            the patterns which the network has to remember <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             any of the patterns, in which case no pattern is trained
+	 */
+	public void trainAll(final boolean[][] patterns)
+			throws HopfieldNetworkException {
+
+		final int size = weights.getSize();
+
+		for (int i = 0; i < patterns.length; i++)
+			if (patterns[i].length != size)
+				throw new HopfieldNetworkException();
+
+		if (patterns.length == 0)
+			return;
+
+		// stack the bipolar patterns as the rows of one matrix
+		final double data[] = new double[patterns.length * size];
+
+		for (int i = 0; i < patterns.length; i++)
+			for (int j = 0; j < size; j++)
+				data[i * size + j] = BiPolarUtil.bipolar2double(patterns[i][j]);
+
+		this.weights.trainAll(new Matrix(patterns.length, size, data));
+		this.packedWeights = null;
+		this.version++;
+
+	}
+
+	/**
+	 * Train the Hopfield network with patterns arriving in chunks, such as
+	 * batches read one at a time from a file too large to load at once. Each
+	 * chunk is trained as by {@link #trainAll(boolean[][])}, so only one chunk
+	 * needs to be in memory at a time. <br/>
+	 * 
+	 * @param chunks
+	 *            the chunks of patterns which the network has to remember <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             a pattern; the chunks before the offending one stay trained
+	 */
+	public void trainAll(final Iterator<boolean[][]> chunks)
+			throws HopfieldNetworkException {
+
+		while (chunks.hasNext())
+			trainAll(chunks.next());
 
 	}
 
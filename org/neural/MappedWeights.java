@@ -0,0 +1,146 @@
+package org.neural;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import org.util.MappedMatrix;
+import org.util.Matrix;
+import org.util.MatrixCodec;
+import org.util.MatrixFile;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+
+/**
+ * MappedWeights: uses the weights of a Hopfield network in place in a
+ * memory-mapped weight file. Nothing is read when the network is opened; the
+ * operating system pages the weights in as recall touches them. The file is
+ * mapped privately, so training changes the weights of this network only,
+ * and never the file, or read-only, so training fails. <br/>
+ * 
+ * The weights may be more than an array can hold, so they are saved and
+ * encoded straight from the mapping; only copy and toMatrix need them on
+ * the heap. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class MappedWeights extends WeightStore {
+
+	private final MappedMatrix weightMatrix;
+
+	MappedWeights(final MappedMatrix weightMatrix) {
+
+		this.weightMatrix = weightMatrix;
+
+	}
+
+	@Override
+	int getSize() {
+
+		return weightMatrix.getRows();
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields) {
+
+		// the weights are symmetric, so the columns are read as rows
+		try {
+			weightMatrix.multiply(state.getData(), fields.getData());
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields, final int from,
+			final int to) {
+
+		weightMatrix.multiplyRows(state.getData(), fields.getData(), from, to);
+
+	}
+
+	@Override
+	void addWeights(final int neuron, final double alpha,
+			final double fields[]) {
+
+		weightMatrix.addRow(neuron, alpha, fields);
+
+	}
+
+	@Override
+	void train(final Matrix pattern) {
+
+		try {
+			weightMatrix.rankOneUpdate(1, pattern.getData(), pattern.getData(),
+					true);
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void add(final Matrix delta, final int patterns) {
+
+		try {
+			weightMatrix.add(delta);
+		} catch (MatrixIncompatibilityException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	double getWeight(final int row, final int col) {
+
+		double weight = 0;
+
+		try {
+			weight = weightMatrix.getElement(row, col);
+		} catch (MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+		return weight;
+
+	}
+
+	@Override
+	void save(final Path path) throws IOException {
+
+		MatrixFile.write(path, weightMatrix, true);
+
+	}
+
+	@Override
+	void encode(final OutputStream out) throws IOException {
+
+		MatrixCodec.encode(weightMatrix, out);
+
+	}
+
+	@Override
+	WeightStore copy() {
+
+		// a copy has to live somewhere other than the shared mapping
+		return new DenseWeights(toMatrix());
+
+	}
+
+	@Override
+	Matrix toMatrix() {
+
+		try {
+			return weightMatrix.toMatrix();
+		} catch (MatrixIncompatibilityException e) {
+			throw new IllegalArgumentException("weights of order "
+					+ getSize() + " have more elements than an array can hold",
+					e);
+		}
+
+	}
+
+}
@@ -0,0 +1,346 @@
+package org.neural;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import org.util.BiPolarUtil;
+import org.util.Matrix;
+import org.util.MatrixAliasingException;
+import org.util.MatrixFile;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.MatrixMath;
+
+/**
+ * OutOfCoreRecall: recalls batches of probes from a Hopfield network whose
+ * weights stay in a dense weight file written by HopfieldNetwork.save, for
+ * weights too large for memory. Every pass streams the weights from disk
+ * once, a tile of rows at a time: since the weights are symmetric, tile
+ * rows [r, r + R) give the local fields of neurons r to r + R - 1 for all
+ * probes of the batch, computed with one blocked matrix product. <br/>
+ * 
+ * A background thread reads tile k + 1 while tile k is multiplied, so the
+ * disk is kept busy and a pass takes about as long as reading the file
+ * sequentially. Two tiles are held at a time, which bounds the memory used
+ * for weights by the tile budget, whatever the size of the file. Each pass
+ * also checks the weights read against the checksum of the file. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public class OutOfCoreRecall implements AutoCloseable {
+
+	// weights are read from disk through a buffer of this many bytes
+	private static final int READ_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+
+	private final long offset, checksum;
+
+	private final int size, tileRows, tileCount;
+
+	// the two tiles, one computed on while the other is read into
+	private final double tiles[][];
+
+	// the buffer weights are read through, used by the prefetching thread
+	private final ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE).order(
+			ByteOrder.LITTLE_ENDIAN);
+
+	private final ExecutorService prefetcher;
+
+	/**
+	 * Open a weight file for out-of-core recall <br/>
+	 * 
+	 * @param path
+	 *            a weight file in the dense layout, flagged symmetric, as
+	 *            written by HopfieldNetwork.save
+	 * @param tileBudget
+	 *            the most memory, in bytes, that the tiles of weights held
+	 *            at a time may take; at least one row per tile is held
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a symmetric
+	 *             matrix in the dense layout
+	 */
+	public OutOfCoreRecall(final Path path, final long tileBudget)
+			throws IOException {
+
+		final MatrixFile file = MatrixFile.open(path);
+
+		if (file.getLayout() != MatrixFile.DENSE || !file.isSymmetric()
+				|| file.getRows() != file.getCols())
+			throw new IOException(path
+					+ " does not hold dense symmetric weights");
+
+		this.size = file.getRows();
+		// a tile is one array, so it holds at most the largest array's rows
+		this.tileRows = (int) Math.max(1, Math.min(Math.min(size,
+				Matrix.MAX_ELEMENTS / Math.max(size, 1)), tileBudget / 2
+				/ (8L * Math.max(size, 1))));
+		this.tileCount = (size + tileRows - 1) / tileRows;
+		this.tiles = new double[2][tileRows * size];
+		this.offset = file.getDataOffset();
+		this.checksum = file.getChecksum();
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+			final Thread thread = new Thread(r, "weight prefetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	}
+
+	/**
+	 * Get the number of neurons of the network in the file
+	 * 
+	 * @return size of the neural network
+	 */
+	public int getSize() {
+
+		return this.size;
+
+	}
+
+	/**
+	 * Get the number of rows of weights in each tile
+	 * 
+	 * @return rows per tile
+	 */
+	public int getTileRows() {
+
+		return this.tileRows;
+
+	}
+
+	/**
+	 * Present a batch of patterns to the network and get back the output for
+	 * each, as HopfieldNetwork.presentBatch does, in one pass over the file <br/>
+	 * 
+	 * @param patterns
+	 *            the boolean patterns presented to the network <br/>
+	 * @return The outputs of the network, one per pattern <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the length of any pattern is unequal to the number of
+	 *             neurons in the network
+	 * @throws IOException
+	 *             if the weights cannot be read, or fail their checksum
+	 */
+	public boolean[][] presentBatch(final boolean[][] patterns)
+			throws HopfieldNetworkException, IOException {
+
+		for (int i = 0; i < patterns.length; i++)
+			if (patterns[i].length != size)
+				throw new HopfieldNetworkException();
+
+		final boolean output[][] = new boolean[patterns.length][];
+
+		if (patterns.length == 0)
+			return output;
+
+		final double fields[] = pass(patterns);
+
+		for (int i = 0; i < patterns.length; i++) {
+			output[i] = new boolean[size];
+			for (int j = 0; j < size; j++)
+				output[i][j] = fields[i * size + j] > 0;
+		}
+
+		return output;
+
+	}
+
+	/**
+	 * Recall a batch of probes by synchronous updates, one pass over the file
+	 * per step for the whole batch. A probe drops out of the batch once it
+	 * reaches a fixed point, or returns to its state of two steps before,
+	 * i.e., falls into a 2-cycle; recall stops when no probe is left or after
+	 * maxSteps passes <br/>
+	 * 
+	 * @param patterns
+	 *            the initial states <br/>
+	 * @param maxSteps
+	 *            the largest number of passes to make <br/>
+	 * @return The final state of each probe <br/>
+	 * 
+	 * @throws HopfieldNetworkException
+	 *             if the length of any pattern is unequal to the number of
+	 *             neurons in the network
+	 * @throws IOException
+	 *             if the weights cannot be read, or fail their checksum
+	 */
+	public boolean[][] recall(final boolean[][] patterns, final int maxSteps)
+			throws HopfieldNetworkException, IOException {
+
+		final boolean states[][] = new boolean[patterns.length][];
+		final boolean previous[][] = new boolean[patterns.length][];
+		int active[] = new int[patterns.length];
+
+		for (int i = 0; i < patterns.length; i++) {
+			states[i] = patterns[i].clone();
+			active[i] = i;
+		}
+
+		for (int step = 0; step < maxSteps && active.length > 0; step++) {
+
+			final boolean batch[][] = new boolean[active.length][];
+
+			for (int k = 0; k < active.length; k++)
+				batch[k] = states[active[k]];
+
+			final boolean next[][] = presentBatch(batch);
+			int remaining = 0;
+
+			for (int k = 0; k < active.length; k++) {
+				final int i = active[k];
+				final boolean settled = Arrays.equals(next[k], states[i])
+						|| Arrays.equals(next[k], previous[i]);
+
+				previous[i] = states[i];
+				states[i] = next[k];
+
+				if (!settled)
+					active[remaining++] = i;
+			}
+
+			active = Arrays.copyOf(active, remaining);
+
+		}
+
+		return states;
+
+	}
+
+	/**
+	 * Stop the prefetching thread, wait for it to finish and close the file
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be closed, or the wait is interrupted
+	 */
+	@Override
+	public void close() throws IOException {
+
+		prefetcher.shutdownNow();
+
+		// a read still running would otherwise fail on the closed channel
+		try {
+			prefetcher.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			channel.close();
+		}
+
+	}
+
+	/*
+	 * Compute the local fields of all patterns, as a P x N row-major array,
+	 * in one pass over the weights; passes share the tiles, so they are made
+	 * one at a time
+	 */
+	private synchronized double[] pass(final boolean[][] patterns) throws IOException {
+
+		final int count = patterns.length;
+		final double states[] = new double[count * size];
+
+		for (int i = 0; i < count; i++)
+			for (int j = 0; j < size; j++)
+				states[i * size + j] = BiPolarUtil.bipolar2double(patterns[i][j]);
+
+		final Matrix s = new Matrix(count, size, states);
+		final Matrix fields = new Matrix(count, size);
+		final CRC32C crc = new CRC32C();
+
+		Future<?> next = prefetch(0, crc);
+
+		for (int k = 0; k < tileCount; k++) {
+
+			await(next);
+
+			if (k + 1 < tileCount)
+				next = prefetch(k + 1, crc);
+
+			final int first = k * tileRows, rows = Math.min(tileRows, size
+					- first);
+			final Matrix tile = new Matrix(rows, size, tiles[k % 2]);
+
+			// fields of neurons [first, first + rows) are S W(tile)^T
+			try {
+				MatrixMath.multiply(s, tile.transposeView(),
+						fields.subMatrixView(0, first, count, rows));
+			} catch (MatrixIncompatibilityException | MatrixAliasingException
+					| MatrixIndexOutOfBoundsException e) {
+				e.printStackTrace();
+			}
+
+		}
+
+		if (crc.getValue() != checksum)
+			throw new IOException("weights fail their checksum");
+
+		return fields.getData();
+
+	}
+
+	// start reading a tile into its buffer on the prefetching thread
+	private Future<?> prefetch(final int k, final CRC32C crc) {
+
+		return prefetcher.submit(() -> {
+			readTile(k, crc);
+			return null;
+		});
+
+	}
+
+	private void readTile(final int k, final CRC32C crc) throws IOException {
+
+		final double tile[] = tiles[k % 2];
+		final int rows = Math.min(tileRows, size - k * tileRows);
+		final long bytes = 8L * rows * size;
+		final long start = offset + 8L * k * tileRows * size;
+
+		for (long done = 0; done < bytes;) {
+			buffer.clear().limit((int) Math.min(READ_SIZE, bytes - done));
+
+			while (buffer.hasRemaining())
+				if (channel.read(buffer, start + done + buffer.position()) < 0)
+					throw new IOException("weight file is truncated");
+
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			buffer.asDoubleBuffer().get(tile, (int) (done / 8),
+					buffer.remaining() / 8);
+			done += buffer.limit();
+		}
+
+	}
+
+	private static void await(final Future<?> read) throws IOException {
+
+		try {
+			read.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+
+	}
+
+}
@@ -0,0 +1,388 @@
+package org.neural;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.util.BitPattern;
+
+/**
+ * RecallCache: a bounded cache of the outputs of HopfieldNetwork.present,
+ * for traffic in which the same probes recur. Probes and outputs are held as
+ * BitPatterns, one bit per neuron, and probes are looked up by the hash of
+ * their packed words. <br/>
+ * 
+ * Every entry belongs to a version of the weights. A lookup or insertion
+ * under a newer version than the cache holds drops all entries, so training
+ * or editing the weights invalidates the cache without any further call;
+ * lookups under an older version, such as those of a concurrent reader still
+ * using the previous weights, miss and are not stored. <br/>
+ * 
+ * The cache holds at most a given number of entries, and drops entries by
+ * the given {@link EvictionPolicy} when full. All methods are synchronized,
+ * so one cache can serve a ConcurrentHopfieldNetwork. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public final class RecallCache {
+
+	private final EvictionPolicy policy;
+
+	private final int capacity;
+
+	/*
+	 * LRU keeps all entries in main. TinyLFU admits new entries to window,
+	 * and splits main into probation, for entries seen once in main, and
+	 * protected, for entries hit again there. All maps are in access order,
+	 * eldest first.
+	 */
+	private final LinkedHashMap<BitPattern, BitPattern> window, probation,
+			main;
+
+	private final int windowCapacity, protectedCapacity;
+
+	private final FrequencySketch sketch;
+
+	// version of the weights the entries were recalled with
+	private long version;
+
+	private long hits, misses, evictions, invalidations;
+
+	/**
+	 * Create a cache holding at most the given number of entries <br/>
+	 * 
+	 * @param maxEntries
+	 *            the largest number of entries held
+	 * @param policy
+	 *            the way entries are chosen for eviction
+	 */
+	public RecallCache(final int maxEntries, final EvictionPolicy policy) {
+
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("cache must hold an entry");
+
+		this.policy = policy;
+		this.capacity = maxEntries;
+		this.main = new LinkedHashMap<BitPattern, BitPattern>(16, 0.75f, true);
+
+		if (policy == EvictionPolicy.TINY_LFU) {
+			this.windowCapacity = Math.max(1, maxEntries / 100);
+			this.protectedCapacity = (maxEntries - windowCapacity) * 4 / 5;
+			this.window = new LinkedHashMap<BitPattern, BitPattern>(16, 0.75f,
+					true);
+			this.probation = new LinkedHashMap<BitPattern, BitPattern>(16,
+					0.75f, true);
+			this.sketch = new FrequencySketch(maxEntries);
+		} else {
+			this.windowCapacity = 0;
+			this.protectedCapacity = maxEntries;
+			this.window = null;
+			this.probation = null;
+			this.sketch = null;
+		}
+
+	}
+
+	/**
+	 * Create a cache whose entries for patterns of the given length take
+	 * about the given number of bytes in all <br/>
+	 * 
+	 * @param maxBytes
+	 *            the memory the entries may take
+	 * @param patternLength
+	 *            the number of neurons of the network cached
+	 * @param policy
+	 *            the way entries are chosen for eviction <br/>
+	 * 
+	 * @return a cache of at least one entry
+	 */
+	public static RecallCache withMaxBytes(final long maxBytes,
+			final int patternLength, final EvictionPolicy policy) {
+
+		return new RecallCache((int) Math.max(1, Math.min(Integer.MAX_VALUE,
+				maxBytes / bytesPerEntry(patternLength))), policy);
+
+	}
+
+	/**
+	 * Estimate the memory taken by one entry for patterns of the given length:
+	 * the packed words, headers and length of the probe and of the output,
+	 * and the map entry holding them <br/>
+	 * 
+	 * @param patternLength
+	 *            the number of neurons of the network cached
+	 * 
+	 * @return estimated bytes per entry
+	 */
+	public static long bytesPerEntry(final int patternLength) {
+
+		return 2 * (40 + 8L * BitPattern.wordCount(patternLength)) + 64;
+
+	}
+
+	/**
+	 * Look up the output recalled for a probe under the given version of the
+	 * weights <br/>
+	 * 
+	 * @param probe
+	 *            the pattern presented to the network
+	 * @param weightsVersion
+	 *            the version of the weights the caller recalls with <br/>
+	 * 
+	 * @return a new array holding the cached output, or null on a miss
+	 */
+	public synchronized boolean[] get(final boolean[] probe,
+			final long weightsVersion) {
+
+		if (!checkVersion(weightsVersion)) {
+			misses++;
+			return null;
+		}
+
+		final BitPattern key = BitPattern.fromBoolean(probe);
+		BitPattern output;
+
+		if (policy == EvictionPolicy.LRU)
+			output = main.get(key);
+		else {
+			sketch.increment(key.hashCode());
+			output = window.get(key);
+			if (output == null)
+				output = main.get(key);
+			if (output == null) {
+				output = probation.remove(key);
+				if (output != null)
+					promote(key, output);
+			}
+		}
+
+		if (output == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return output.toBoolean();
+
+	}
+
+	/**
+	 * Store the output recalled for a probe under the given version of the
+	 * weights. Nothing is stored under a version older than the cache's <br/>
+	 * 
+	 * @param probe
+	 *            the pattern presented to the network
+	 * @param output
+	 *            the output of the network, which is copied
+	 * @param weightsVersion
+	 *            the version of the weights the output was recalled with
+	 */
+	public synchronized void put(final boolean[] probe, final boolean[] output,
+			final long weightsVersion) {
+
+		if (!checkVersion(weightsVersion))
+			return;
+
+		final BitPattern key = BitPattern.fromBoolean(probe);
+		final BitPattern value = BitPattern.fromBoolean(output);
+
+		if (policy == EvictionPolicy.LRU) {
+			main.put(key, value);
+			if (main.size() > capacity)
+				evictEldest(main);
+			return;
+		}
+
+		if (main.containsKey(key)) {
+			main.put(key, value);
+			return;
+		}
+		if (probation.containsKey(key)) {
+			probation.put(key, value);
+			return;
+		}
+
+		window.put(key, value);
+
+		if (window.size() > windowCapacity)
+			admit();
+
+	}
+
+	/**
+	 * Drop all entries. Statistics are kept
+	 */
+	public synchronized void clear() {
+
+		main.clear();
+
+		if (window != null) {
+			window.clear();
+			probation.clear();
+		}
+
+	}
+
+	/**
+	 * Get the number of entries held
+	 * 
+	 * @return number of cached outputs
+	 */
+	public synchronized int size() {
+
+		return main.size()
+				+ (window == null ? 0 : window.size() + probation.size());
+
+	}
+
+	/**
+	 * Get the largest number of entries held
+	 * 
+	 * @return capacity of the cache
+	 */
+	public int getCapacity() {
+
+		return this.capacity;
+
+	}
+
+	/**
+	 * Get the number of lookups answered from the cache
+	 * 
+	 * @return number of hits
+	 */
+	public synchronized long getHitCount() {
+
+		return this.hits;
+
+	}
+
+	/**
+	 * Get the number of lookups not answered from the cache
+	 * 
+	 * @return number of misses
+	 */
+	public synchronized long getMissCount() {
+
+		return this.misses;
+
+	}
+
+	/**
+	 * Get the fraction of lookups answered from the cache
+	 * 
+	 * @return hits over all lookups, 0 before the first lookup
+	 */
+	public synchronized double getHitRate() {
+
+		final long lookups = hits + misses;
+
+		return lookups == 0 ? 0 : (double) hits / lookups;
+
+	}
+
+	/**
+	 * Get the number of entries dropped to make room for others
+	 * 
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+
+		return this.evictions;
+
+	}
+
+	/**
+	 * Get the number of times the cache was emptied by a new version of the
+	 * weights
+	 * 
+	 * @return number of invalidations
+	 */
+	public synchronized long getInvalidationCount() {
+
+		return this.invalidations;
+
+	}
+
+	/*
+	 * Bring the cache to the given version, dropping all entries if it is
+	 * newer; false if the version is older than the cache's
+	 */
+	private boolean checkVersion(final long weightsVersion) {
+
+		if (weightsVersion < version)
+			return false;
+
+		if (weightsVersion > version) {
+			if (size() > 0)
+				invalidations++;
+			clear();
+			version = weightsVersion;
+		}
+
+		return true;
+
+	}
+
+	// move an entry hit in probation to protected, demoting if it overflows
+	private void promote(final BitPattern key, final BitPattern value) {
+
+		main.put(key, value);
+
+		if (main.size() > protectedCapacity) {
+			final Iterator<Map.Entry<BitPattern, BitPattern>> eldest = main
+					.entrySet().iterator();
+			final Map.Entry<BitPattern, BitPattern> demoted = eldest.next();
+			eldest.remove();
+			probation.put(demoted.getKey(), demoted.getValue());
+		}
+
+	}
+
+	/*
+	 * Move the eldest entry of the window to probation if the main area has
+	 * room, or else if it is estimated to be more frequent than the entry
+	 * probation would evict; otherwise drop it
+	 */
+	private void admit() {
+
+		final Iterator<Map.Entry<BitPattern, BitPattern>> eldest = window
+				.entrySet().iterator();
+		final Map.Entry<BitPattern, BitPattern> candidate = eldest.next();
+		eldest.remove();
+
+		if (main.size() + probation.size() < capacity - windowCapacity) {
+			probation.put(candidate.getKey(), candidate.getValue());
+			return;
+		}
+
+		final LinkedHashMap<BitPattern, BitPattern> victims = probation
+				.isEmpty() ? main : probation;
+
+		evictions++;
+
+		// with no main area at all, the window is the whole cache
+		if (victims.isEmpty())
+			return;
+
+		final BitPattern victim = victims.keySet().iterator().next();
+
+		if (sketch.frequency(candidate.getKey().hashCode()) > sketch
+				.frequency(victim.hashCode())) {
+			victims.remove(victim);
+			probation.put(candidate.getKey(), candidate.getValue());
+		}
+
+	}
+
+	private void evictEldest(final LinkedHashMap<BitPattern, BitPattern> map) {
+
+		final Iterator<BitPattern> eldest = map.keySet().iterator();
+		eldest.next();
+		eldest.remove();
+		evictions++;
+
+	}
+
+}
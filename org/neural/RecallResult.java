@@ -0,0 +1,127 @@
+package org.neural;
+
+/**
+ * RecallResult: the final state of an iterated recall together with how the
+ * network got there: the number of steps taken, whether the network settled
+ * into a fixed point, fell into a cycle of states, or was stopped by the step
+ * limit first, and the energy of the state after every step. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public final class RecallResult {
+
+	private final boolean state[];
+
+	private final int steps;
+
+	// length of the cycle reached, 1 for a fixed point, 0 for none
+	private final int cycleLength;
+
+	// energy of the initial state and of the state after each step
+	private final double energies[];
+
+	RecallResult(final boolean state[], final int steps,
+			final int cycleLength, final double energies[]) {
+
+		this.state = state;
+		this.steps = steps;
+		this.cycleLength = cycleLength;
+		this.energies = energies;
+
+	}
+
+	/**
+	 * Get the state of the network when recall stopped
+	 * 
+	 * @return the output of the network
+	 */
+	public boolean[] getState() {
+
+		return this.state;
+
+	}
+
+	/**
+	 * Get the number of update steps taken, including the one which revealed
+	 * the fixed point or cycle
+	 * 
+	 * @return number of steps
+	 */
+	public int getSteps() {
+
+		return this.steps;
+
+	}
+
+	/**
+	 * Get the energy of the final state
+	 * 
+	 * @return the energy -s<sup>T</sup>Ws / 2 of the state
+	 */
+	public double getEnergy() {
+
+		return this.energies[steps];
+
+	}
+
+	/**
+	 * Get the energy trajectory of the recall. The array is not copied <br/>
+	 * 
+	 * @return steps + 1 energies: of the initial state, and of the state after
+	 *         each step
+	 */
+	public double[] getEnergies() {
+
+		return this.energies;
+
+	}
+
+	/**
+	 * Get the number of states in the cycle the network fell into <br/>
+	 * 
+	 * @return 1 for a fixed point, 2 or more for a cycle, and 0 if the step
+	 *         limit was reached first
+	 */
+	public int getCycleLength() {
+
+		return this.cycleLength;
+
+	}
+
+	/**
+	 * Check whether the network settled into a fixed point
+	 * 
+	 * @return true if the final state maps to itself
+	 */
+	public boolean isFixedPoint() {
+
+		return this.cycleLength == 1;
+
+	}
+
+	/**
+	 * Check whether the network fell into a cycle of two or more states. With
+	 * symmetric weights and synchronous updates only 2-cycles occur
+	 * 
+	 * @return true if the final state recurs after more than one step
+	 */
+	public boolean isCycle() {
+
+		return this.cycleLength > 1;
+
+	}
+
+	/**
+	 * Check whether recall stopped at the step limit before the network
+	 * settled
+	 * 
+	 * @return true if neither a fixed point nor a cycle was reached
+	 */
+	public boolean reachedLimit() {
+
+		return this.cycleLength == 0;
+
+	}
+
+}
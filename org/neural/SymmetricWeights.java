@@ -0,0 +1,166 @@
+package org.neural;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.util.Matrix;
+import org.util.MatrixFile;
+import org.util.MatrixAliasingException;
+import org.util.MatrixIncompatibilityException;
+import org.util.MatrixIndexOutOfBoundsException;
+import org.util.MatrixMath;
+import org.util.NotVectorException;
+import org.util.SymmetricPackedMatrix;
+
+/**
+ * SymmetricWeights: stores the weights of a Hopfield network as the packed
+ * strict upper triangle of the weight matrix. The weights are symmetric with
+ * a zero diagonal by construction, so nothing is lost, and the store takes a
+ * little less than half the memory of a dense double matrix. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class SymmetricWeights extends WeightStore {
+
+	private final SymmetricPackedMatrix weightMatrix;
+
+	SymmetricWeights(final int size) {
+
+		this(new SymmetricPackedMatrix(size));
+
+	}
+
+	SymmetricWeights(final SymmetricPackedMatrix weightMatrix) {
+
+		this.weightMatrix = weightMatrix;
+
+	}
+
+	@Override
+	int getSize() {
+
+		return weightMatrix.getSize();
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields) {
+
+		try {
+			MatrixMath.vectorMultiply(this.weightMatrix, state, fields);
+		} catch (MatrixIncompatibilityException | NotVectorException
+				| MatrixAliasingException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void localFields(final Matrix state, final Matrix fields, final int from,
+			final int to) {
+
+		final double data[] = weightMatrix.getData(), s[] = state.getData();
+		final double h[] = fields.getData();
+		final int size = getSize();
+
+		for (int i = from; i < to; i++) {
+			double sum = 0;
+
+			// column i above the diagonal, one element per packed row
+			for (int j = 0; j < i; j++)
+				sum += data[weightMatrix.rowStart(j) + i - j - 1] * s[j];
+
+			// row i right of the diagonal, contiguous in packed storage
+			for (int j = i + 1, p = weightMatrix.rowStart(i); j < size; j++, p++)
+				sum += data[p] * s[j];
+
+			h[i] = sum;
+		}
+
+	}
+
+	@Override
+	void addWeights(final int neuron, final double alpha,
+			final double fields[]) {
+
+		final double data[] = weightMatrix.getData();
+
+		// column neuron above the diagonal, one element per packed row
+		for (int i = 0; i < neuron; i++)
+			fields[i] += alpha
+					* data[weightMatrix.rowStart(i) + neuron - i - 1];
+
+		// row neuron right of the diagonal, contiguous in packed storage
+		final int start = weightMatrix.rowStart(neuron) - neuron - 1;
+		for (int i = neuron + 1; i < fields.length; i++)
+			fields[i] += alpha * data[start + i];
+
+	}
+
+	@Override
+	void train(final Matrix pattern) {
+
+		try {
+			MatrixMath.rankOneUpdate(this.weightMatrix, 1, pattern);
+		} catch (MatrixIncompatibilityException | NotVectorException e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	@Override
+	void add(final Matrix delta, final int patterns) {
+
+		final double data[] = weightMatrix.getData(), d[] = delta.getData();
+		final int size = getSize(), off = delta.getOffset(), stride = delta
+				.getStride(), col = delta.getColStride();
+
+		for (int i = 0, k = 0; i < size; i++)
+			for (int j = i + 1; j < size; j++, k++)
+				data[k] += d[off + i * stride + j * col];
+
+	}
+
+	@Override
+	double getWeight(final int row, final int col) {
+
+		double weight = 0;
+
+		try {
+			weight = weightMatrix.getElement(row, col);
+		} catch (MatrixIndexOutOfBoundsException e) {
+			e.printStackTrace();
+		}
+
+		return weight;
+
+	}
+
+	@Override
+	WeightStore copy() {
+
+		final SymmetricWeights copy = new SymmetricWeights(getSize());
+		final double data[] = weightMatrix.getData();
+
+		System.arraycopy(data, 0, copy.weightMatrix.getData(), 0, data.length);
+
+		return copy;
+
+	}
+
+	@Override
+	void save(final Path path) throws IOException {
+
+		MatrixFile.write(path, weightMatrix);
+
+	}
+
+	@Override
+	Matrix toMatrix() {
+
+		return weightMatrix.toMatrix();
+
+	}
+
+}
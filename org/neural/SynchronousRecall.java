@@ -0,0 +1,175 @@
+package org.neural;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.util.BitPattern;
+import org.util.Matrix;
+import org.util.MatrixMath;
+
+/**
+ * SynchronousRecall: a fork/join task that runs one synchronous update step
+ * of a Hopfield network, i.e., computes the local field of every neuron from
+ * the current state and sets the next state to its sign. The neurons are
+ * split into halves until every piece holds at most grain neurons, and each
+ * piece writes only its own range of fields and next state, so the pieces
+ * need no synchronization. <br/>
+ * 
+ * {@link #run} repeats the step until a state recurs. Every state is packed
+ * into a BitPattern and remembered in a hash map with the step at which it
+ * occurred, so a recurring state is found in expected O(N / 64) time, and the
+ * distance between its two occurrences is the length of the cycle. The local
+ * fields of each step also give the energy of the state it starts from in
+ * O(N), so the energy trajectory comes with the recall. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+final class SynchronousRecall extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	// tasks are never serialized, so the fields need not be either
+	private final transient WeightStore.RangeFields ranges;
+
+	private final transient Matrix fields;
+
+	private final double next[];
+
+	private final int from, to, grain;
+
+	private SynchronousRecall(final WeightStore.RangeFields ranges,
+			final Matrix fields, final double next[], final int from,
+			final int to, final int grain) {
+
+		this.ranges = ranges;
+		this.fields = fields;
+		this.next = next;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+
+	}
+
+	@Override
+	protected void compute() {
+
+		if (to - from <= grain) {
+			ranges.localFields(fields, from, to);
+			final double h[] = fields.getData();
+			for (int i = from; i < to; i++)
+				next[i] = h[i] > 0 ? 1 : -1;
+			return;
+		}
+
+		final int mid = (from + to) >>> 1;
+
+		invokeAll(new SynchronousRecall(ranges, fields, next, from, mid,
+				grain), new SynchronousRecall(ranges, fields, next, mid, to,
+				grain));
+
+	}
+
+	/**
+	 * Update all neurons of a network together, step after step, until a
+	 * state recurs or maxSteps steps have been taken <br/>
+	 * 
+	 * @param weights
+	 *            the weights of the network
+	 * @param initial
+	 *            the bipolar initial state, which is not changed
+	 * @param maxSteps
+	 *            the largest number of steps to take
+	 * @param pool
+	 *            the pool on which the neurons of each step are updated, or
+	 *            null to update them on the calling thread <br/>
+	 * 
+	 * @return the final state and the statistics of the recall
+	 */
+	static RecallResult run(final WeightStore weights, final double initial[],
+			final int maxSteps, final ForkJoinPool pool) {
+
+		final int size = weights.getSize();
+		final int parallelism = pool == null ? 1 : pool.getParallelism();
+		// steps with less work than the threshold are not worth forking
+		final boolean inline = parallelism < 2
+				|| size * weights.workPerNeuron() < MatrixMath
+						.getParallelThreshold();
+		// a few pieces per thread to balance the load
+		final int grain = inline ? Math.max(1, size) : Math.max(1, size
+				/ (4 * parallelism));
+
+		final Matrix state = new Matrix(1, size, initial.clone());
+		final Matrix fields = new Matrix(1, size);
+		final double next[] = new double[size];
+		final HashMap<BitPattern, Integer> seen = new HashMap<BitPattern, Integer>();
+		double energies[] = new double[Math.max(1, Math.min(maxSteps, 64)) + 1];
+
+		seen.put(pack(state.getData()), 0);
+
+		for (int step = 1; step <= maxSteps; step++) {
+
+			// work shared by all pieces, e.g. Ps for factored weights, once
+			final SynchronousRecall task = new SynchronousRecall(
+					weights.prepare(state), fields, next, 0, size, grain);
+
+			if (inline || grain >= size)
+				task.compute();
+			else
+				pool.invoke(task);
+
+			if (step == energies.length)
+				energies = Arrays.copyOf(energies, 2 * energies.length);
+
+			// the fields of the step are those of the state it started from
+			energies[step - 1] = WeightStore.energy(state.getData(),
+					fields.getData());
+
+			System.arraycopy(next, 0, state.getData(), 0, size);
+
+			final Integer previous = seen.put(pack(next), step);
+
+			if (previous != null) {
+				energies[step] = energies[previous];
+				return new RecallResult(toBoolean(next), step, step - previous,
+						Arrays.copyOf(energies, step + 1));
+			}
+
+		}
+
+		final int steps = Math.max(0, maxSteps);
+
+		weights.localFields(state, fields);
+		energies[steps] = WeightStore.energy(state.getData(), fields.getData());
+
+		return new RecallResult(toBoolean(state.getData()), steps, 0,
+				Arrays.copyOf(energies, steps + 1));
+
+	}
+
+	private static BitPattern pack(final double s[]) {
+
+		final BitPattern pattern = new BitPattern(s.length);
+
+		for (int i = 0; i < s.length; i++)
+			if (s[i] > 0)
+				pattern.set(i, true);
+
+		return pattern;
+
+	}
+
+	private static boolean[] toBoolean(final double s[]) {
+
+		final boolean b[] = new boolean[s.length];
+
+		for (int i = 0; i < s.length; i++)
+			b[i] = s[i] > 0;
+
+		return b;
+
+	}
+
+}
@@ -0,0 +1,552 @@
+package org.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+import org.util.BitPattern;
+import org.util.Matrix;
+import org.util.MatrixFile;
+
+/**
+ * TrainingJournal: makes the training of a Hopfield network durable. Every
+ * pattern trained through the journal is first appended to a log, packed to
+ * one bit per neuron, so remembering a pattern writes N / 8 bytes rather than
+ * the 8 * N^2 bytes of the weights. Appends are forced to the disk in groups:
+ * one fsync covers every pattern appended since the last one, so a crash of
+ * the process loses nothing and a crash of the machine at most the last
+ * group. <br/>
+ *
+ * Every so many patterns the journal is compacted: the weights are saved as
+ * a snapshot, and a new, empty log continues from it. Opening the journal
+ * rebuilds the network by loading the latest snapshot and replaying the log
+ * after it; a record torn by a crash ends the log and is cut off. <br/>
+ *
+ * <p>
+ * The directory holds one generation of files, snapshot-G.hopw (a
+ * {@link MatrixFile}, absent for generation 0) and journal-G.log. A log
+ * starts with a 32 byte little-endian header:
+ * </p>
+ *
+ * <pre>
+ * offset size  field
+ *      0     4  magic "HOPJ"
+ *      4     2  format version, 1
+ *      6     2  reserved, zero
+ *      8     4  number of neurons N
+ *     12     4  reserved, zero
+ *     16     8  generation G
+ *     24     8  number of patterns in the snapshot of generation G
+ *     32        the records
+ * </pre>
+ *
+ * <p>
+ * and every record is the pattern in (N + 7) / 8 bytes, bit j of byte j / 8
+ * set for neuron j on, followed by the CRC-32C of those bytes in 4 bytes.
+ * Compaction writes the log of the next generation before its snapshot, and
+ * a generation counts only once both exist, so a crash midway leaves the
+ * previous generation in force.
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public class TrainingJournal implements AutoCloseable {
+
+	private static final int MAGIC = 'H' | 'O' << 8 | 'P' << 16 | 'J' << 24;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 32;
+
+	// patterns are replayed into the network this many at a time
+	private static final int REPLAY_BATCH = 256;
+
+	private static final Pattern FILE_NAME = Pattern
+			.compile("(journal|snapshot)-(\\d+)\\.(log|hopw)");
+
+	private final Path directory;
+
+	private final HopfieldNetwork network;
+
+	private final int size, recordSize, groupCommit, compactInterval;
+
+	// scratch buffer holding encoded records
+	private ByteBuffer records;
+
+	private FileChannel log;
+
+	private long generation;
+
+	// patterns in the snapshot, and appended to the log since
+	private long snapshotPatterns, logPatterns;
+
+	// patterns appended but not yet forced to the disk
+	private int unsynced;
+
+	/**
+	 * Open the journal in a directory with {@link WeightStorage#DOUBLE}
+	 * weights, forcing every 64 patterns to the disk and compacting every 64N
+	 * patterns, when the log has grown to about the 8N<sup>2</sup> bytes of
+	 * a snapshot, so compaction at most doubles the bytes written <br/>
+	 *
+	 * @param directory
+	 *            the directory of the journal, created if it does not exist
+	 * @param size
+	 *            the number of neurons in the network
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be read or created, or was written
+	 *             for a network of another size
+	 */
+	public TrainingJournal(final Path directory, final int size)
+			throws IOException {
+		this(directory, size, WeightStorage.DOUBLE, 64, (int) Math.min(
+				Integer.MAX_VALUE, 64L * size));
+	}
+
+	/**
+	 * Open the journal in a directory, rebuilding the network it holds <br/>
+	 *
+	 * @param directory
+	 *            the directory of the journal, created if it does not exist
+	 * @param size
+	 *            the number of neurons in the network
+	 * @param storage
+	 *            the form of the weight matrix of the rebuilt network
+	 * @param groupCommit
+	 *            the number of patterns appended between forcing the log to
+	 *            the disk
+	 * @param compactInterval
+	 *            the number of patterns appended to a log before it is
+	 *            compacted into a snapshot, or 0 to compact only on demand
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be read or created, or was written
+	 *             for a network of another size
+	 */
+	public TrainingJournal(final Path directory, final int size,
+			final WeightStorage storage, final int groupCommit,
+			final int compactInterval) throws IOException {
+
+		if (groupCommit < 1 || compactInterval < 0)
+			throw new IllegalArgumentException("group commit must be positive"
+					+ " and compaction interval non-negative");
+
+		this.directory = directory;
+		this.size = size;
+		this.recordSize = (size + 7) / 8 + 4;
+		this.groupCommit = groupCommit;
+		this.compactInterval = compactInterval;
+		this.records = ByteBuffer.allocate(recordSize * REPLAY_BATCH).order(
+				ByteOrder.LITTLE_ENDIAN);
+
+		Files.createDirectories(directory);
+
+		this.generation = latestGeneration();
+
+		final WeightStore weights = HopfieldNetwork.createStore(size, storage);
+
+		if (generation < 0) {
+			generation = 0;
+			createLog(0, 0);
+		} else
+			readSnapshot(weights);
+
+		this.network = new HopfieldNetwork(weights);
+		this.log = FileChannel.open(logPath(generation),
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		replay();
+		removeStale();
+
+	}
+
+	/**
+	 * Get the network rebuilt from the journal. It may be used for recall;
+	 * patterns trained into it directly, rather than through the journal,
+	 * are not recorded <br/>
+	 *
+	 * @return the network
+	 */
+	public HopfieldNetwork getNetwork() {
+
+		return this.network;
+
+	}
+
+	/**
+	 * Get the number of patterns the journal holds, in the snapshot and the
+	 * log together
+	 *
+	 * @return number of patterns trained
+	 */
+	public synchronized long getPatternCount() {
+
+		return snapshotPatterns + logPatterns;
+
+	}
+
+	/**
+	 * Get the generation of the journal, which every compaction raises by one
+	 *
+	 * @return generation of the current snapshot and log
+	 */
+	public synchronized long getGeneration() {
+
+		return this.generation;
+
+	}
+
+	/**
+	 * Append a pattern to the log and train it into the network <br/>
+	 *
+	 * @param pattern
+	 *            the pattern which the network has to remember <br/>
+	 *
+	 * @throws HopfieldNetworkException
+	 *             if the size of the neural network does not match the size of
+	 *             the pattern
+	 * @throws IOException
+	 *             if the pattern cannot be appended
+	 */
+	public void train(final boolean[] pattern)
+			throws HopfieldNetworkException, IOException {
+
+		trainAll(new boolean[][] { pattern });
+
+	}
+
+	/**
+	 * Append several patterns to the log with one write, and train them into
+	 * the network as {@link HopfieldNetwork#trainAll(boolean[][])} does <br/>
+	 *
+	 * @param patterns
+	 *            the patterns which the network has to remember <br/>
+	 *
+	 * @throws HopfieldNetworkException
+	 *             if the length of any pattern is unequal to the number of
+	 *             neurons in the network
+	 * @throws IOException
+	 *             if the patterns cannot be appended
+	 */
+	public synchronized void trainAll(final boolean[][] patterns)
+			throws HopfieldNetworkException, IOException {
+
+		for (int i = 0; i < patterns.length; i++)
+			if (patterns[i].length != size)
+				throw new HopfieldNetworkException();
+
+		if (records.capacity() < recordSize * patterns.length)
+			records = ByteBuffer.allocate(recordSize * patterns.length).order(
+					ByteOrder.LITTLE_ENDIAN);
+
+		records.clear();
+
+		for (int i = 0; i < patterns.length; i++)
+			encode(patterns[i]);
+
+		records.flip();
+
+		// the log is written ahead of the weights
+		final long end = HEADER_SIZE + logPatterns * recordSize;
+
+		for (long at = end; records.hasRemaining();)
+			at += log.write(records, at);
+
+		logPatterns += patterns.length;
+		unsynced += patterns.length;
+
+		network.trainAll(patterns);
+
+		if (unsynced >= groupCommit)
+			sync();
+
+		if (compactInterval > 0 && logPatterns >= compactInterval)
+			compact();
+
+	}
+
+	/**
+	 * Force every pattern appended so far to the disk
+	 *
+	 * @throws IOException
+	 *             if the log cannot be forced
+	 */
+	public synchronized void sync() throws IOException {
+
+		if (unsynced > 0) {
+			log.force(false);
+			unsynced = 0;
+		}
+
+	}
+
+	/**
+	 * Save the weights of the network as the snapshot of a new generation,
+	 * with an empty log, and delete the files of the old one <br/>
+	 *
+	 * @throws IOException
+	 *             if the snapshot or the log cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+
+		sync();
+
+		final long next = generation + 1, patterns = getPatternCount();
+
+		createLog(next, patterns);
+
+		// saving forces the snapshot and renames it into place when whole
+		network.save(snapshotPath(next));
+		syncDirectory();
+
+		log.close();
+		log = FileChannel.open(logPath(next), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		generation = next;
+		snapshotPatterns = patterns;
+		logPatterns = 0;
+
+		removeStale();
+
+	}
+
+	/**
+	 * Force the log to the disk and close it
+	 *
+	 * @throws IOException
+	 *             if the log cannot be forced or closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+
+		try {
+			sync();
+		} finally {
+			log.close();
+		}
+
+	}
+
+	// append the record of a pattern to the records buffer
+	private void encode(final boolean pattern[]) {
+
+		final long words[] = BitPattern.fromBoolean(pattern).getWords();
+		final int start = records.position(), bytes = recordSize - 4;
+
+		for (int j = 0; j < bytes; j++)
+			records.put((byte) (words[j >>> 3] >>> 8 * (j & 7)));
+
+		final CRC32C crc = new CRC32C();
+		crc.update(records.array(), start, bytes);
+		records.putInt((int) crc.getValue());
+
+	}
+
+	/*
+	 * Train the records of the log into the network, in batches, and cut the
+	 * log off after the last whole record
+	 */
+	private void replay() throws IOException {
+
+		final long available = Math.max(0, log.size() - HEADER_SIZE)
+				/ recordSize;
+		final boolean batch[][] = new boolean[REPLAY_BATCH][size];
+		final long words[] = new long[BitPattern.wordCount(size)];
+		final CRC32C crc = new CRC32C();
+		long position = HEADER_SIZE;
+
+		for (long done = 0; done < available;) {
+			final int count = (int) Math.min(REPLAY_BATCH, available - done);
+
+			records.clear().limit(count * recordSize);
+			while (records.hasRemaining())
+				position += log.read(records, position);
+			records.flip();
+
+			int good = 0;
+
+			for (; good < count; good++) {
+				final int start = good * recordSize, bytes = recordSize - 4;
+
+				crc.reset();
+				crc.update(records.array(), start, bytes);
+				if ((int) crc.getValue() != records.getInt(start + bytes))
+					break;
+
+				Arrays.fill(words, 0);
+				for (int j = 0; j < bytes; j++)
+					words[j >>> 3] |= (records.get(start + j) & 0xFFL) << 8
+							* (j & 7);
+
+				final BitPattern pattern = new BitPattern(size, words);
+				for (int j = 0; j < size; j++)
+					batch[good][j] = pattern.get(j);
+			}
+
+			try {
+				network.trainAll(good == REPLAY_BATCH ? batch : Arrays.copyOf(
+						batch, good));
+			} catch (HopfieldNetworkException e) {
+				// every record holds a pattern of the size of the network
+				e.printStackTrace();
+			}
+
+			done += good;
+			logPatterns = done;
+
+			if (good < count)
+				break;
+		}
+
+		// drop a record torn by a crash, so appends follow the last whole one
+		log.truncate(HEADER_SIZE + logPatterns * recordSize);
+		log.force(true);
+
+	}
+
+	// read the snapshot of the current generation into an empty store
+	private void readSnapshot(final WeightStore weights) throws IOException {
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+
+		try (FileChannel channel = FileChannel.open(logPath(generation),
+				StandardOpenOption.READ)) {
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException(logPath(generation)
+							+ " is too short for a header");
+		}
+
+		if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION)
+			throw new IOException(logPath(generation)
+					+ " is not a training journal");
+		if (header.getInt(8) != size)
+			throw new IOException(logPath(generation) + " is for a network of "
+					+ header.getInt(8) + " neurons");
+
+		snapshotPatterns = header.getLong(24);
+
+		if (generation == 0)
+			return;
+
+		final MatrixFile file = MatrixFile.open(snapshotPath(generation));
+		final Matrix matrix = file.getLayout() == MatrixFile.PACKED ? file
+				.readPacked().toMatrix() : file.readMatrix();
+
+		if (matrix.getRows() != size || matrix.getCols() != size)
+			throw new IOException(snapshotPath(generation)
+					+ " does not hold the weights of " + size + " neurons");
+
+		weights.add(matrix, (int) Math.min(snapshotPatterns,
+				Integer.MAX_VALUE));
+
+	}
+
+	// write the empty log of a generation, replacing it if it exists
+	private void createLog(final long generation, final long patterns)
+			throws IOException {
+
+		final Path path = logPath(generation);
+		final Path partial = directory.resolve(path.getFileName() + ".tmp");
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+
+		header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0)
+				.putInt(size).putInt(0).putLong(generation).putLong(patterns);
+		header.flip();
+
+		try (FileChannel channel = FileChannel.open(partial,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long at = 0; header.hasRemaining();)
+				at += channel.write(header, at);
+			channel.force(true);
+		}
+
+		Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory();
+
+	}
+
+	/*
+	 * Find the latest generation in force: one with a log and, past
+	 * generation 0, a snapshot; -1 if there is none
+	 */
+	private long latestGeneration() throws IOException {
+
+		long latest = -1;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				final Matcher m = FILE_NAME.matcher(file.getFileName()
+						.toString());
+				if (m.matches() && m.group(1).equals("journal")
+						&& m.group(3).equals("log")) {
+					final long g = Long.parseLong(m.group(2));
+					if (g > latest
+							&& (g == 0 || Files.exists(snapshotPath(g))))
+						latest = g;
+				}
+			}
+		}
+
+		return latest;
+
+	}
+
+	// delete the files of every generation but the current one
+	private void removeStale() throws IOException {
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				final String name = file.getFileName().toString();
+				final boolean partial = name.endsWith(".tmp");
+				final Matcher m = FILE_NAME.matcher(partial ? name.substring(0,
+						name.length() - 4) : name);
+				if (m.matches()
+						&& (partial || Long.parseLong(m.group(2)) != generation))
+					Files.deleteIfExists(file);
+			}
+		}
+
+	}
+
+	// force the entries of the directory, so renames survive a crash
+	private void syncDirectory() {
+
+		try (FileChannel channel = FileChannel.open(directory,
+				StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not every platform can open a directory; the rename still holds
+		}
+
+	}
+
+	private Path logPath(final long generation) {
+
+		return directory.resolve("journal-" + generation + ".log");
+
+	}
+
+	private Path snapshotPath(final long generation) {
+
+		return directory.resolve("snapshot-" + generation + ".hopw");
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.neural;
+
+/**
+ * UpdateOrder: the order in which asynchronous recall visits the neurons of a
+ * HopfieldNetwork in each sweep. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public enum UpdateOrder {
+
+	/**
+	 * Every sweep visits the neurons from the first to the last.
+	 */
+	SEQUENTIAL,
+
+	/**
+	 * Every sweep visits the neurons in a new random permutation, which avoids
+	 * favouring the attractors reached first in index order.
+	 */
+	RANDOM
+
+}
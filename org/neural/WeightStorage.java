@@ -0,0 +1,43 @@
+package org.neural;
+
+/**
+ * WeightStorage: the ways a HopfieldNetwork can hold its weight matrix. <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public enum WeightStorage {
+
+	/**
+	 * A full N x N matrix of doubles. Holds any real weights, and the matrix
+	 * returned by HopfieldNetwork.getWeight() is the live weight matrix.
+	 */
+	DOUBLE,
+
+	/**
+	 * A full N x N matrix of bytes, shorts or ints, widened as the number of
+	 * trained patterns grows. Only holds the integer weights of Hebbian
+	 * training; HopfieldNetwork.getWeight() returns a copy.
+	 */
+	INTEGER,
+
+	/**
+	 * The strict upper triangle of the symmetric weight matrix, packed into
+	 * N(N-1)/2 doubles. Holds the same weights as {@link #DOUBLE} in a little
+	 * less than half the memory; HopfieldNetwork.getWeight() returns a copy.
+	 * Networks of up to 65536 neurons can be held, but the full copy, which
+	 * getWeight(), encode and the recall of bit-packed patterns need, only
+	 * up to 46340; beyond that they throw IllegalArgumentException.
+	 */
+	SYMMETRIC,
+
+	/**
+	 * The P x N matrix of the trained patterns, from which recall computes the
+	 * Hebbian weights' products in O(NP) time and memory. Gives the same
+	 * results as {@link #DOUBLE} and switches to a dense matrix once more
+	 * than N / 2 patterns are trained; HopfieldNetwork.getWeight() returns a
+	 * copy, expanded to N x N.
+	 */
+	FACTORED
+
+}
@@ -0,0 +1,265 @@
+package org.neural;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import org.util.Matrix;
+import org.util.MatrixCodec;
+import org.util.MatrixFile;
+
+/**
+ * WeightStore: the storage of the weights of a Hopfield network together
+ * with the kernels that recall and training need from it. The weights are
+ * always symmetric with a zero diagonal, so the weights into a neuron are the
+ * same as the weights out of it and either can be read as a row. <br/>
+ * 
+ * All vectors passed to a store are 1 x N row matrices of its own size, and
+ * batches are P x N matrices, all with packed storage of their own.
+ * 
+ * @author Srijith Nair
+ *
+ */
+abstract class WeightStore {
+
+	/**
+	 * Get the number of neurons, i.e., the order of the weight matrix
+	 * 
+	 * @return number of neurons
+	 */
+	abstract int getSize();
+
+	/**
+	 * Compute the local field of every neuron for a bipolar state, i.e., the
+	 * product of the weight matrix with the state. Readers of a
+	 * ConcurrentHopfieldNetwork share one store, so calls may run concurrently
+	 * and must not write to any state of the store <br/>
+	 * 
+	 * @param state
+	 *            the bipolar state of the network
+	 * @param fields
+	 *            receives the local field of each neuron
+	 */
+	abstract void localFields(Matrix state, Matrix fields);
+
+	/**
+	 * Compute the local fields of the neurons from (inclusive) to (exclusive)
+	 * only. Calls for disjoint ranges of neurons may run concurrently on the
+	 * same state, each writing only its own range of fields <br/>
+	 * 
+	 * @param state
+	 *            the bipolar state of the network
+	 * @param fields
+	 *            receives the local fields of the neurons in the range
+	 * @param from
+	 *            the first neuron of the range (indexed from 0)
+	 * @param to
+	 *            one past the last neuron of the range
+	 */
+	abstract void localFields(Matrix state, Matrix fields, int from, int to);
+
+	/**
+	 * The local fields of one state, computed range by range
+	 */
+	interface RangeFields {
+
+		void localFields(Matrix fields, int from, int to);
+
+	}
+
+	/**
+	 * Prepare the local fields of a state for computation by ranges of
+	 * neurons, doing once any work that all ranges share. Stores without such
+	 * work compute each range on its own <br/>
+	 * 
+	 * @param state
+	 *            the bipolar state of the network, which must not change while
+	 *            the ranges are computed
+	 * @return the local fields of the state by ranges of neurons
+	 */
+	RangeFields prepare(final Matrix state) {
+
+		return (fields, from, to) -> localFields(state, fields, from, to);
+
+	}
+
+	/**
+	 * Get the number of element operations localFields takes per neuron,
+	 * which decides whether computing the fields is worth splitting across
+	 * threads. Most stores read a row of N weights per neuron <br/>
+	 * 
+	 * @return the work per neuron of one computation of the local fields
+	 */
+	long workPerNeuron() {
+
+		return getSize();
+
+	}
+
+	/**
+	 * Compute the local fields for a batch of bipolar states, one row of
+	 * fields per row of states. Stores which can do better than one state at a
+	 * time override this <br/>
+	 * 
+	 * @param states
+	 *            a P x N matrix holding one bipolar state per row
+	 * @param fields
+	 *            a P x N matrix receiving the local fields of each state
+	 */
+	void localFieldsBatch(final Matrix states, final Matrix fields) {
+
+		final int size = getSize();
+		final Matrix state = new Matrix(1, size), field = new Matrix(1, size);
+
+		for (int i = 0; i < states.getRows(); i++) {
+			System.arraycopy(states.getData(), i * size, state.getData(), 0,
+					size);
+			localFields(state, field);
+			System.arraycopy(field.getData(), 0, fields.getData(), i * size,
+					size);
+		}
+
+	}
+
+	/**
+	 * Add a multiple of the weights out of one neuron to the local fields,
+	 * i.e., fields(i) += alpha * w(i, neuron) for all i. When that neuron
+	 * changes its state by alpha, this brings the fields up to date in O(N)
+	 * instead of the O(N<sup>2</sup>) of computing them again <br/>
+	 * 
+	 * @param neuron
+	 *            the neuron whose weights are added (indexed from 0)
+	 * @param alpha
+	 *            the multiple of the weights to add
+	 * @param fields
+	 *            the local fields of all neurons, updated in place
+	 */
+	abstract void addWeights(int neuron, double alpha, double fields[]);
+
+	/**
+	 * Add the Hebbian contribution of a bipolar pattern to the weights, i.e.,
+	 * the outer product of the pattern with itself less the identity <br/>
+	 * 
+	 * @param pattern
+	 *            the bipolar pattern to be remembered
+	 */
+	abstract void train(Matrix pattern);
+
+	/**
+	 * Add the Hebbian contributions of a batch of bipolar patterns to the
+	 * weights. Stores which can do better than one pattern at a time override
+	 * this <br/>
+	 * 
+	 * @param patterns
+	 *            a P x N matrix holding one bipolar pattern per row
+	 */
+	void trainAll(final Matrix patterns) {
+
+		final int size = getSize();
+		final Matrix row = new Matrix(1, size);
+
+		for (int i = 0; i < patterns.getRows(); i++) {
+			System.arraycopy(patterns.getData(), i * size, row.getData(), 0,
+					size);
+			train(row);
+		}
+
+	}
+
+	/**
+	 * Add the summed Hebbian contributions of a number of patterns, trained
+	 * elsewhere into a dense matrix starting from zero, to the weights <br/>
+	 * 
+	 * @param delta
+	 *            an N x N symmetric matrix with a zero diagonal
+	 * @param patterns
+	 *            the number of patterns summed into delta, which bounds the
+	 *            magnitude of its elements
+	 */
+	abstract void add(Matrix delta, int patterns);
+
+	/**
+	 * Write the weights to a file in the format of MatrixFile. Stores write
+	 * the dense layout unless they override this <br/>
+	 * 
+	 * @param path
+	 *            the file to write
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	void save(final Path path) throws IOException {
+
+		MatrixFile.write(path, toMatrix(), true);
+
+	}
+
+	/**
+	 * Write the weights to a stream in the form of MatrixCodec. Stores write
+	 * the dense matrix unless they override this <br/>
+	 * 
+	 * @param out
+	 *            the stream to write to
+	 * 
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	void encode(final OutputStream out) throws IOException {
+
+		MatrixCodec.encode(toMatrix(), out);
+
+	}
+
+	/**
+	 * Compute the energy -s<sup>T</sup>Ws / 2 of a state from its local
+	 * fields Ws, in O(N) <br/>
+	 * 
+	 * @param state
+	 *            the bipolar state s
+	 * @param fields
+	 *            the local fields Ws of the state
+	 * 
+	 * @return the energy of the state
+	 */
+	static double energy(final double state[], final double fields[]) {
+
+		double sum = 0;
+
+		for (int i = 0; i < state.length; i++)
+			sum += state[i] * fields[i];
+
+		return -sum / 2;
+
+	}
+
+	/**
+	 * Get the weight of the connection between two neurons
+	 * 
+	 * @param row
+	 *            the first neuron (indexed from 0)
+	 * @param col
+	 *            the second neuron (indexed from 0)
+	 * 
+	 * @return the weight between the two neurons
+	 */
+	abstract double getWeight(int row, int col);
+
+	/**
+	 * Make an independent copy of this store, which shares no storage with it
+	 * 
+	 * @return a store holding the same weights
+	 */
+	abstract WeightStore copy();
+
+	/**
+	 * Get the weights as a dense matrix. Stores which hold a dense double
+	 * matrix return it, others return a copy <br/>
+	 * 
+	 * @return the N x N weight matrix
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the weights have more elements than an array can hold
+	 */
+	abstract Matrix toMatrix();
+
+}
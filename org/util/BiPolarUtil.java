@@ -64,6 +64,27 @@ public class BiPolarUtil {
 
 	}
 
+	/**
+	 * Compute the double equivalent for 1-Dimensional array of booleans into
+	 * a given array, so that no new array needs to be allocated <br/>
+	 * 
+	 * @param b
+	 *            array of boolean values
+	 * @param dec
+	 *            array receiving the equivalent bipolar(-1/1) values, at least
+	 *            as long as b <br/>
+	 * 
+	 * @return the array dec
+	 */
+	public static double[] bipolar2double(final boolean b[], final double dec[]) {
+
+		for (int i = 0; i < b.length; i++)
+			dec[i] = BiPolarUtil.bipolar2double(b[i]);
+
+		return dec;
+
+	}
+
 	/**
 	 * Compute the double equivalent for 2-Dimensional array of booleans <br/>
 	 * 
@@ -0,0 +1,339 @@
+package org.util;
+
+import java.util.Arrays;
+
+/**
+ * BitPattern: a boolean pattern packed 64 values to a long word. Bit j of
+ * word j / 64 holds element j, set for true (bipolar 1) and clear for false
+ * (bipolar -1); bits past the length of the pattern are always clear. A
+ * pattern of N neurons takes N / 8 bytes instead of the 8 * N bytes of its
+ * bipolar double form, and whole words of it can be compared with a single
+ * XOR and counted with Long.bitCount. <br/>
+ *
+ * @author Srijith Nair
+ *
+ */
+public class BitPattern {
+
+	// the packed bits, 64 elements to a word
+	private final long words[];
+
+	// number of elements in the pattern
+	private final int length;
+
+	/**
+	 * Constructor: creates a pattern of the given length with all elements
+	 * false <br/>
+	 *
+	 * @param length
+	 *            the number of elements in the pattern
+	 */
+	public BitPattern(final int length) {
+
+		this.length = length;
+		this.words = new long[wordCount(length)];
+
+	}
+
+	/**
+	 * Constructor: creates a pattern over the given words. The words are not
+	 * copied <br/>
+	 *
+	 * @param length
+	 *            the number of elements in the pattern
+	 * @param words
+	 *            the packed bits, at least (length + 63) / 64 words, with the
+	 *            bits past length clear
+	 */
+	public BitPattern(final int length, final long words[]) {
+
+		if (words.length < wordCount(length))
+			throw new IllegalArgumentException("not enough words for "
+					+ length + " bits");
+
+		this.length = length;
+		this.words = words;
+
+	}
+
+	/**
+	 * Get the number of long words needed for a pattern of the given length <br/>
+	 *
+	 * @param length
+	 *            the number of elements in the pattern
+	 *
+	 * @return the number of words holding the pattern
+	 */
+	public static int wordCount(final int length) {
+
+		return (length + 63) >>> 6;
+
+	}
+
+	/**
+	 * Pack a boolean array into a pattern <br/>
+	 *
+	 * @param b
+	 *            array of boolean values <br/>
+	 *
+	 * @return the packed pattern
+	 */
+	public static BitPattern fromBoolean(final boolean b[]) {
+
+		final BitPattern pattern = new BitPattern(b.length);
+
+		for (int i = 0; i < b.length; i++)
+			if (b[i])
+				pattern.words[i >>> 6] |= 1L << i;
+
+		return pattern;
+
+	}
+
+	/**
+	 * Pack an array of bipolar values into a pattern <br/>
+	 *
+	 * @param d
+	 *            array of doubles, each either -1 or 1 <br/>
+	 *
+	 * @return the packed pattern
+	 *
+	 * @throws NotBipolarDecimalException
+	 *             If even a single value in d is anything other than -1 or 1
+	 */
+	public static BitPattern fromBipolar(final double d[])
+			throws NotBipolarDecimalException {
+
+		final BitPattern pattern = new BitPattern(d.length);
+
+		for (int i = 0; i < d.length; i++)
+			if (BiPolarUtil.double2bipolar(d[i]))
+				pattern.words[i >>> 6] |= 1L << i;
+
+		return pattern;
+
+	}
+
+	/**
+	 * Unpack this pattern into a boolean array <br/>
+	 *
+	 * @return array holding the elements of this pattern
+	 */
+	public boolean[] toBoolean() {
+
+		final boolean b[] = new boolean[length];
+
+		for (int i = 0; i < length; i++)
+			b[i] = get(i);
+
+		return b;
+
+	}
+
+	/**
+	 * Unpack this pattern into bipolar values <br/>
+	 *
+	 * @return array of -1 for false and 1 for true
+	 */
+	public double[] toBipolar() {
+
+		return toBipolar(new double[length]);
+
+	}
+
+	/**
+	 * Unpack this pattern into bipolar values stored in a given array <br/>
+	 *
+	 * @param d
+	 *            array receiving the values, at least as long as this pattern <br/>
+	 *
+	 * @return the array d
+	 */
+	public double[] toBipolar(final double d[]) {
+
+		for (int i = 0; i < length; i++)
+			d[i] = get(i) ? 1 : -1;
+
+		return d;
+
+	}
+
+	/**
+	 * Get the number of elements in this pattern
+	 *
+	 * @return length of the pattern
+	 */
+	public int getLength() {
+
+		return this.length;
+
+	}
+
+	/**
+	 * Get the words holding the bits of this pattern. The array is not copied <br/>
+	 *
+	 * @return the packed bits, 64 elements to a word
+	 */
+	public long[] getWords() {
+
+		return this.words;
+
+	}
+
+	/**
+	 * Get an element of this pattern
+	 *
+	 * @param index
+	 *            index of the element (indexed from 0)
+	 *
+	 * @return the element, true for bipolar 1
+	 */
+	public boolean get(final int index) {
+
+		checkIndex(index);
+
+		return (words[index >>> 6] & (1L << index)) != 0;
+
+	}
+
+	/**
+	 * Set an element of this pattern
+	 *
+	 * @param index
+	 *            index of the element (indexed from 0)
+	 * @param value
+	 *            the new value of the element
+	 */
+	public void set(final int index, final boolean value) {
+
+		checkIndex(index);
+
+		if (value)
+			words[index >>> 6] |= 1L << index;
+		else
+			words[index >>> 6] &= ~(1L << index);
+
+	}
+
+	/**
+	 * Invert an element of this pattern
+	 *
+	 * @param index
+	 *            index of the element (indexed from 0)
+	 */
+	public void flip(final int index) {
+
+		checkIndex(index);
+
+		words[index >>> 6] ^= 1L << index;
+
+	}
+
+	/**
+	 * Count the elements of this pattern which are true
+	 *
+	 * @return number of set bits
+	 */
+	public int cardinality() {
+
+		int count = 0;
+
+		for (int i = 0; i < words.length; i++)
+			count += Long.bitCount(words[i]);
+
+		return count;
+
+	}
+
+	/**
+	 * Count the elements in which this pattern differs from another one of the
+	 * same length <br/>
+	 *
+	 * @param other
+	 *            the pattern compared with this one <br/>
+	 *
+	 * @return the Hamming distance between the patterns
+	 */
+	public int hammingDistance(final BitPattern other) {
+
+		if (other.length != length)
+			throw new IllegalArgumentException("patterns of different lengths");
+
+		int count = 0;
+
+		for (int i = 0; i < wordCount(length); i++)
+			count += Long.bitCount(words[i] ^ other.words[i]);
+
+		return count;
+
+	}
+
+	/**
+	 * Compute the bipolar dot product of this pattern with another one of the
+	 * same length, i.e., the number of agreeing elements (the set bits of the
+	 * XNOR of the words) less the number of differing ones <br/>
+	 *
+	 * @param other
+	 *            the other pattern <br/>
+	 *
+	 * @return sum of s<sub>i</sub> * t<sub>i</sub> over the bipolar forms
+	 */
+	public int dotProduct(final BitPattern other) {
+
+		return length - 2 * hammingDistance(other);
+
+	}
+
+	/**
+	 * Make an independent copy of this pattern
+	 *
+	 * @return copy of this pattern
+	 */
+	public BitPattern copy() {
+
+		return new BitPattern(length, Arrays.copyOf(words, words.length));
+
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BitPattern))
+			return false;
+
+		final BitPattern other = (BitPattern) obj;
+
+		if (other.length != length)
+			return false;
+
+		for (int i = 0; i < wordCount(length); i++)
+			if (words[i] != other.words[i])
+				return false;
+
+		return true;
+
+	}
+
+	@Override
+	public int hashCode() {
+
+		long hash = length;
+
+		for (int i = 0; i < wordCount(length); i++)
+			hash = hash * 0x9E3779B97F4A7C15L + words[i];
+
+		return (int) (hash ^ (hash >>> 32));
+
+	}
+
+	private void checkIndex(final int index) {
+
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index " + index
+					+ " out of pattern of length " + length);
+
+	}
+
+}
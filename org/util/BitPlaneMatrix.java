@@ -0,0 +1,183 @@
+package org.util;
+
+/**
+ * BitPlaneMatrix: a square matrix of small integers stored as bit planes,
+ * for multiplying with bit-packed bipolar patterns. Each element is split
+ * into its sign and the binary digits of its magnitude; plane b of row i
+ * holds one bit per column, set where the element is positive (or, in the
+ * negative planes, negative) and has bit b of its magnitude set. <br/>
+ *
+ * <p>
+ * For a bipolar pattern s packed into bits x, the sum of s<sub>j</sub> over
+ * the columns j of a plane M is popcount(M AND x) - popcount(M AND NOT x),
+ * i.e., 2 * popcount(M AND x) - popcount(M): the agreeing (XNOR) bits counted
+ * against the disagreeing ones. Weighting every plane by 2<sup>b</sup> and
+ * its sign gives the row's dot product with s using one AND and one
+ * Long.bitCount per 64 columns per plane, instead of 64 multiply-adds.
+ * </p>
+ *
+ * <p>
+ * Elements are rounded to the nearest integer when the planes are built, so
+ * products are exact for integer-valued matrices such as Hebbian Hopfield
+ * weights and approximate otherwise.
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public class BitPlaneMatrix {
+
+	// number of rows and columns
+	private final int size;
+
+	// number of long words per plane row
+	private final int wordsPerRow;
+
+	// number of magnitude bits, i.e., planes of each sign
+	private final int planes;
+
+	/*
+	 * plane bits, laid out as [row][sign][plane][word] so that all the planes
+	 * of a row are read together; sign 0 is positive, sign 1 negative
+	 */
+	private final long bits[];
+
+	// popcount of every plane, laid out as [row][sign][plane]
+	private final int counts[];
+
+	/**
+	 * Constructor: builds the bit planes of a square matrix <br/>
+	 *
+	 * @param mat
+	 *            the matrix to be decomposed, rounded to integers
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the matrix is not square
+	 */
+	public BitPlaneMatrix(final Matrix mat)
+			throws MatrixIncompatibilityException {
+
+		if (mat.getRows() != mat.getCols())
+			throw new MatrixIncompatibilityException();
+
+		this.size = mat.getRows();
+		this.wordsPerRow = BitPattern.wordCount(size);
+
+		final double data[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride();
+
+		// the largest magnitude gives the number of planes
+		long max = 0;
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++)
+				max = Math.max(max,
+						Math.abs(Math.round(data[off + i * stride + j * col])));
+
+		this.planes = Math.max(1, 64 - Long.numberOfLeadingZeros(max));
+		this.bits = new long[size * 2 * planes * wordsPerRow];
+		this.counts = new int[size * 2 * planes];
+
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++) {
+				final long value = Math.round(data[off + i * stride + j * col]);
+				final int sign = value < 0 ? 1 : 0;
+				long magnitude = Math.abs(value);
+
+				for (int b = 0; magnitude != 0; b++, magnitude >>>= 1)
+					if ((magnitude & 1) != 0) {
+						final int plane = (i * 2 + sign) * planes + b;
+						bits[plane * wordsPerRow + (j >>> 6)] |= 1L << j;
+						counts[plane]++;
+					}
+			}
+
+	}
+
+	/**
+	 * Get the number of rows (and columns) of this matrix
+	 *
+	 * @return order of the matrix
+	 */
+	public int getSize() {
+
+		return this.size;
+
+	}
+
+	/**
+	 * Get the number of magnitude bits used per element
+	 *
+	 * @return number of planes of each sign
+	 */
+	public int getPlanes() {
+
+		return this.planes;
+
+	}
+
+	/**
+	 * Compute the dot product of one row of this matrix with a bipolar
+	 * pattern <br/>
+	 *
+	 * @param row
+	 *            the row of the matrix (indexed from 0)
+	 * @param pattern
+	 *            the packed bipolar pattern, as long as a row <br/>
+	 *
+	 * @return the sum of element (row, j) times s<sub>j</sub> over all j
+	 */
+	public long rowProduct(final int row, final BitPattern pattern) {
+
+		final long x[] = pattern.getWords();
+		long sum = 0;
+
+		for (int sign = 0; sign < 2; sign++) {
+			long signed = 0;
+
+			for (int b = planes - 1; b >= 0; b--) {
+				final int plane = (row * 2 + sign) * planes + b;
+				final int base = plane * wordsPerRow;
+				int agree = 0;
+
+				for (int w = 0; w < wordsPerRow; w++)
+					agree += Long.bitCount(bits[base + w] & x[w]);
+
+				signed = 2 * signed + 2 * agree - counts[plane];
+			}
+
+			sum += sign == 0 ? signed : -signed;
+		}
+
+		return sum;
+
+	}
+
+	/**
+	 * Multiply this matrix with a bipolar pattern, i.e., compute the dot
+	 * product of every row with the pattern <br/>
+	 *
+	 * @param pattern
+	 *            the packed bipolar pattern, as long as a row
+	 * @param result
+	 *            array receiving one product per row <br/>
+	 *
+	 * @return the array result
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the pattern or the result is not as long as a row
+	 */
+	public long[] multiply(final BitPattern pattern, final long result[])
+			throws MatrixIncompatibilityException {
+
+		if (pattern.getLength() != size || result.length < size)
+			throw new MatrixIncompatibilityException();
+
+		for (int i = 0; i < size; i++)
+			result[i] = rowProduct(i, pattern);
+
+		return result;
+
+	}
+
+}
@@ -0,0 +1,372 @@
+package org.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedMatrix: a dense matrix of doubles read straight from a memory-mapped
+ * file, as laid out by MatrixFile. Opening it costs no more than mapping the
+ * file: the operating system pages the elements in on first access, and can
+ * drop them again under memory pressure. <br/>
+ *
+ * <p>
+ * A mapped buffer is indexed with an int, so the rows are mapped in chunks
+ * of at most 2 GB each; row i lies in chunk i / rowsPerChunk. Depending on
+ * the map mode, changes to the elements are written through to the file
+ * (READ_WRITE), kept private to this process (PRIVATE), or not allowed at
+ * all (READ_ONLY).
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public final class MappedMatrix {
+
+	private final DoubleBuffer chunks[];
+
+	private final int rows, cols, rowsPerChunk;
+
+	/**
+	 * Map the elements of a matrix stored row after row in a file <br/>
+	 *
+	 * @param channel
+	 *            an open channel on the file, which may be closed once the
+	 *            matrix is mapped
+	 * @param mode
+	 *            the map mode, deciding where changes go
+	 * @param position
+	 *            the offset in the file of element (0, 0)
+	 * @param rows
+	 *            the number of rows
+	 * @param cols
+	 *            the number of columns
+	 * @param order
+	 *            the byte order of the elements in the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	MappedMatrix(final FileChannel channel, final FileChannel.MapMode mode,
+			final long position, final int rows, final int cols,
+			final ByteOrder order) throws IOException {
+
+		final long rowBytes = 8L * Math.max(cols, 1);
+
+		this.rows = rows;
+		this.cols = cols;
+		this.rowsPerChunk = (int) Math.max(1,
+				Math.min(rows, Integer.MAX_VALUE / rowBytes));
+		this.chunks = new DoubleBuffer[(rows + rowsPerChunk - 1)
+				/ rowsPerChunk];
+
+		for (int c = 0; c < chunks.length; c++) {
+			final int first = c * rowsPerChunk;
+			final int count = Math.min(rowsPerChunk, rows - first);
+			final MappedByteBuffer bytes = channel.map(mode, position + first
+					* rowBytes, count * 8L * cols);
+			chunks[c] = bytes.order(order).asDoubleBuffer();
+		}
+
+	}
+
+	/**
+	 * Get the number of rows in this matrix
+	 *
+	 * @return number of rows
+	 */
+	public int getRows() {
+
+		return this.rows;
+
+	}
+
+	/**
+	 * Get the number of columns in this matrix
+	 *
+	 * @return number of columns
+	 */
+	public int getCols() {
+
+		return this.cols;
+
+	}
+
+	/**
+	 * Get the element in the row-th row and col-th column <br/>
+	 *
+	 * @param row
+	 *            the row number of the desired element (indexed from 0)
+	 * @param col
+	 *            the column number of the desired element (indexed from 0) <br/>
+	 *
+	 * @return the element at the desired location <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the given column and row values are not in the matrix's
+	 *             bounds
+	 */
+	public double getElement(final int row, final int col)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		return chunk(row).get(base(row) + col);
+
+	}
+
+	/**
+	 * Change the value of an element, which the map mode must allow <br/>
+	 *
+	 * @param row
+	 *            the row number of the element to be set (indexed from 0)
+	 * @param col
+	 *            the column number of the element to be set (indexed from 0)
+	 * @param value
+	 *            the value to which the element has to be changed <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the given column and row values are not in the matrix's
+	 *             bounds
+	 */
+	public void set(final int row, final int col, final double value)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		chunk(row).put(base(row) + col, value);
+
+	}
+
+	/**
+	 * Multiply this matrix with a vector, i.e., compute the dot product of
+	 * every row with x. The rows are split across the pool of MatrixMath <br/>
+	 *
+	 * @param x
+	 *            a vector with as many elements as this matrix has columns
+	 * @param result
+	 *            receives one dot product per row, and must be as long as
+	 *            this matrix has rows <br/>
+	 *
+	 * @return the array result
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and result do not match the order of
+	 *             this matrix
+	 */
+	public double[] multiply(final double x[], final double result[])
+			throws MatrixIncompatibilityException {
+
+		if (x.length != cols || result.length != rows)
+			throw new MatrixIncompatibilityException();
+
+		ParallelRows.run(MatrixMath.getPool(),
+				MatrixMath.getParallelThreshold(), rows, cols,
+				(from, to) -> multiplyRows(x, result, from, to));
+
+		return result;
+
+	}
+
+	/**
+	 * Compute the dot products of the rows from (inclusive) to (exclusive)
+	 * with a vector, on the calling thread <br/>
+	 *
+	 * @param x
+	 *            a vector with as many elements as this matrix has columns
+	 * @param result
+	 *            receives the dot product of each row in the range
+	 * @param from
+	 *            the first row of the range
+	 * @param to
+	 *            one past the last row of the range <br/>
+	 *
+	 * @return the array result
+	 */
+	public double[] multiplyRows(final double x[], final double result[],
+			final int from, final int to) {
+
+		for (int i = from; i < to; i++) {
+			final DoubleBuffer chunk = chunk(i);
+			final int base = base(i);
+			double sum = 0;
+			for (int j = 0; j < cols; j++)
+				sum += chunk.get(base + j) * x[j];
+			result[i] = sum;
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Add a scaled row of this matrix to a vector, i.e., y = y + alpha *
+	 * a(row) <br/>
+	 *
+	 * @param row
+	 *            the row to be added (indexed from 0)
+	 * @param alpha
+	 *            the multiple of the row to add
+	 * @param y
+	 *            a vector with as many elements as this matrix has columns,
+	 *            updated in place
+	 */
+	public void addRow(final int row, final double alpha, final double y[]) {
+
+		final DoubleBuffer chunk = chunk(row);
+		final int base = base(row);
+
+		for (int j = 0; j < cols; j++)
+			y[j] += alpha * chunk.get(base + j);
+
+	}
+
+	/**
+	 * Add the scaled outer product of two vectors to this matrix in place,
+	 * i.e., a = a + alpha * x * y<sup>T</sup>, as
+	 * {@link MatrixMath#rankOneUpdate(Matrix, double, Matrix, Matrix, boolean)}
+	 * does; the map mode must allow changes <br/>
+	 *
+	 * @param alpha
+	 *            the scalar by which the outer product is multiplied
+	 * @param x
+	 *            a vector with as many elements as this matrix has rows
+	 * @param y
+	 *            a vector with as many elements as this matrix has columns
+	 * @param maskDiagonal
+	 *            true to leave the diagonal unchanged <br/>
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and y do not match the order of this
+	 *             matrix
+	 */
+	public void rankOneUpdate(final double alpha, final double x[],
+			final double y[], final boolean maskDiagonal)
+			throws MatrixIncompatibilityException {
+
+		if (x.length != rows || y.length != cols)
+			throw new MatrixIncompatibilityException();
+
+		ParallelRows.run(MatrixMath.getPool(),
+				MatrixMath.getParallelThreshold(), rows, cols, (from, to) -> {
+					for (int i = from; i < to; i++) {
+						final DoubleBuffer chunk = chunk(i);
+						final int base = base(i);
+						final double ax = alpha * x[i];
+						for (int j = 0; j < cols; j++)
+							if (!maskDiagonal || i != j)
+								chunk.put(base + j, chunk.get(base + j) + ax
+										* y[j]);
+					}
+				});
+
+	}
+
+	/**
+	 * Add a matrix on the heap to this matrix in place; the map mode must
+	 * allow changes <br/>
+	 *
+	 * @param mat
+	 *            a matrix of the same order as this one
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the orders of the matrices differ
+	 */
+	public void add(final Matrix mat) throws MatrixIncompatibilityException {
+
+		if (mat.getRows() != rows || mat.getCols() != cols)
+			throw new MatrixIncompatibilityException();
+
+		final double data[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride();
+
+		for (int i = 0; i < rows; i++) {
+			final DoubleBuffer chunk = chunk(i);
+			final int base = base(i);
+			for (int j = 0; j < cols; j++)
+				chunk.put(base + j, chunk.get(base + j)
+						+ data[off + i * stride + j * col]);
+		}
+
+	}
+
+	/**
+	 * Copy this matrix onto the heap <br/>
+	 *
+	 * @return a Matrix with the elements of this matrix
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if the matrix has too many elements for an array
+	 */
+	public Matrix toMatrix() throws MatrixIncompatibilityException {
+
+		if ((long) rows * cols > Integer.MAX_VALUE - 8)
+			throw new MatrixIncompatibilityException();
+
+		final double data[] = new double[rows * cols];
+
+		// relative bulk reads on duplicates leave the shared chunks alone
+		for (int c = 0; c < chunks.length; c++) {
+			final DoubleBuffer chunk = chunks[c].duplicate();
+			chunk.get(data, c * rowsPerChunk * cols, chunk.capacity());
+		}
+
+		return new Matrix(rows, cols, data);
+
+	}
+
+	// element (row, col), without the bounds check of getElement
+	double get(final int row, final int col) {
+
+		return chunk(row).get(base(row) + col);
+
+	}
+
+	/*
+	 * Put count elements into a buffer in its own byte order, starting from
+	 * element first in row order
+	 */
+	void fill(final ByteBuffer buffer, final long first, final int count) {
+
+		for (long e = first, end = first + count; e < end;) {
+			final int row = (int) (e / cols), col = (int) (e % cols);
+			final int length = (int) Math.min(cols - col, end - e);
+			final int base = base(row) + col;
+
+			// a duplicate, so that readers of the shared chunk are not moved
+			final DoubleBuffer elements = chunk(row).duplicate();
+			elements.limit(base + length).position(base);
+			buffer.asDoubleBuffer().put(elements);
+			buffer.position(buffer.position() + 8 * length);
+
+			e += length;
+		}
+
+	}
+
+	private DoubleBuffer chunk(final int row) {
+
+		return chunks[row / rowsPerChunk];
+
+	}
+
+	// index of element (row, 0) within its chunk
+	private int base(final int row) {
+
+		return row % rowsPerChunk * cols;
+
+	}
+
+	private void checkBounds(final int row, final int col)
+			throws MatrixIndexOutOfBoundsException {
+
+		if (row < 0 || col < 0 || row >= rows || col >= cols)
+			throw new MatrixIndexOutOfBoundsException();
+
+	}
+
+}
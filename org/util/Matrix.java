@@ -11,6 +11,18 @@ package org.util;
  * This class is used to create objects which can be visualized and manipulated
  * similar to, in general, 2-Dimensional matrices
  * </p>
+ * <p>
+ * The elements are held in a single contiguous array, row after row, so that
+ * walking along a row walks linearly through memory. The distance between the
+ * starts of two rows is given by the row stride.
+ * </p>
+ * <p>
+ * A matrix may also be a view on the storage of another matrix: a row, a
+ * column, the transpose, or a rectangular window of it. A view is located in
+ * the shared array by an offset, a row stride and a column stride; it copies
+ * nothing, and changes made through the view are seen by its parent and vice
+ * versa.
+ * </p>
  * <br/>
  * 
  * @author Srijith Nair
@@ -19,12 +31,27 @@ package org.util;
 
 public class Matrix {
 
-	// A 2D array holds the matrix data
-	private double matrix[][];
+	/**
+	 * The largest number of elements a matrix may have, the largest array
+	 * that virtual machines reliably allocate
+	 */
+	public static final int MAX_ELEMENTS = Integer.MAX_VALUE - 8;
+
+	// A single 1D array holds the matrix data row after row
+	private final double data[];
 
 	// dimension values of matrix
 	private int rows, cols;
 
+	// index in the data array of the first element
+	private final int offset;
+
+	// distance in the data array between the starts of two consecutive rows
+	private final int stride;
+
+	// distance in the data array between two consecutive elements of a row
+	private final int colStride;
+
 	/**
 	 * Constructor: Creates matrix of given row and column lengths and
 	 * initializes all elements to zero <br/>
@@ -37,17 +64,60 @@ public class Matrix {
 	 */
 	public Matrix(final int rows, final int cols) {
 
-		// create new array object
-		matrix = new double[rows][cols];
+		// create new array object, all values are initialized to zero
+		data = new double[elementCount(rows, cols)];
 
 		// set dimensions
 		this.rows = rows;
 		this.cols = cols;
+		this.offset = 0;
+		this.stride = cols;
+		this.colStride = 1;
 
-		// initialize all values to zero
-		for (int i = 0; i < rows; i++)
-			for (int j = 0; j < cols; j++)
-				matrix[i][j] = 0;
+	}
+
+	/**
+	 * Constructor: Defines a matrix object over a packed 1D array holding the
+	 * elements row after row. The array is used as the storage of the matrix
+	 * and is not copied. <br/>
+	 * 
+	 * @param rows
+	 *            the number of rows in the matrix
+	 * @param cols
+	 *            the number of columns in the matrix
+	 * @param packedData
+	 *            array of at least rows * cols elements stored row after row
+	 */
+	public Matrix(final int rows, final int cols, final double[] packedData) {
+
+		if (packedData.length < elementCount(rows, cols))
+			throw new IllegalArgumentException("packed array too short for "
+					+ rows + "x" + cols + " matrix");
+
+		data = packedData;
+
+		// set dimensions
+		this.rows = rows;
+		this.cols = cols;
+		this.offset = 0;
+		this.stride = cols;
+		this.colStride = 1;
+
+	}
+
+	/*
+	 * Constructor for views: the matrix is laid over a part of the storage of
+	 * another matrix
+	 */
+	private Matrix(final double[] data, final int offset, final int rows,
+			final int cols, final int stride, final int colStride) {
+
+		this.data = data;
+		this.offset = offset;
+		this.rows = rows;
+		this.cols = cols;
+		this.stride = stride;
+		this.colStride = colStride;
 
 	}
 
@@ -60,11 +130,46 @@ public class Matrix {
 	 */
 	public Matrix(final double[][] matData) {
 
-		matrix = matData;
-
 		// set dimensions
 		rows = matData.length;
 		cols = matData[0].length;
+		offset = 0;
+		stride = cols;
+		colStride = 1;
+
+		// copy the rows one after the other into the packed storage
+		data = new double[elementCount(rows, cols)];
+		for (int i = 0; i < rows; i++)
+			System.arraycopy(matData[i], 0, data, i * stride, cols);
+
+	}
+
+	/**
+	 * Get the number of elements of a rows x cols matrix, checking that they
+	 * fit in the single array which holds a matrix <br/>
+	 * 
+	 * @param rows
+	 *            the number of rows
+	 * @param cols
+	 *            the number of columns <br/>
+	 * 
+	 * @return rows * cols
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if either dimension is negative, or the matrix has more
+	 *             than {@link #MAX_ELEMENTS} elements
+	 */
+	public static int elementCount(final int rows, final int cols) {
+
+		if (rows < 0 || cols < 0)
+			throw new IllegalArgumentException("negative dimension in " + rows
+					+ "x" + cols + " matrix");
+
+		if ((long) rows * cols > MAX_ELEMENTS)
+			throw new IllegalArgumentException(rows + "x" + cols
+					+ " matrix has more elements than an array can hold");
+
+		return rows * cols;
 
 	}
 
@@ -80,12 +185,7 @@ public class Matrix {
 	 */
 	public static Matrix createColumnMatrix(final double input[]) {
 
-		double mat[][] = new double[input.length][1];
-
-		for (int i = 0; i < input.length; i++)
-			mat[i][0] = input[i];
-
-		return new Matrix(mat);
+		return new Matrix(input.length, 1, input.clone());
 
 	}
 
@@ -100,13 +200,7 @@ public class Matrix {
 	 */
 	public static Matrix createRowMatrix(final double input[]) {
 
-		double mat[][] = new double[1][input.length];
-
-		// convert array into a two dimensional array
-		for (int i = 0; i < input.length; i++)
-			mat[0][i] = input[i];
-
-		return new Matrix(mat);
+		return new Matrix(1, input.length, input.clone());
 
 	}
 
@@ -124,13 +218,12 @@ public class Matrix {
 	 */
 	public static Matrix randMatrix(final int rows, final int cols) {
 
-		double mat[][] = new double[rows][cols];
+		double mat[] = new double[elementCount(rows, cols)];
 
-		for (int i = 0; i < rows; i++)
-			for (int j = 0; j < cols; j++)
-				mat[i][j] = 2 * Math.random() - 1;
+		for (int i = 0; i < mat.length; i++)
+			mat[i] = 2 * Math.random() - 1;
 
-		return new Matrix(mat);
+		return new Matrix(rows, cols, mat);
 
 	}
 
@@ -149,7 +242,7 @@ public class Matrix {
 	 */
 	public void add(final int row, final int col, final double value) {
 
-		matrix[row - 1][col - 1] += value;
+		data[index(row - 1, col - 1)] += value;
 
 	}
 
@@ -160,8 +253,11 @@ public class Matrix {
 	public void clear() {
 
 		for (int i = 0; i < rows; i++)
-			for (int j = 0; j < cols; j++)
-				matrix[i][j] = 0;
+			if (colStride == 1)
+				java.util.Arrays.fill(data, index(i, 0), index(i, cols), 0);
+			else
+				for (int j = 0; j < cols; j++)
+					data[index(i, j)] = 0;
 
 	}
 
@@ -172,7 +268,7 @@ public class Matrix {
 	 */
 	public Matrix clone() {
 
-		return new Matrix(matrix);
+		return new Matrix(rows, cols, toPackedArray());
 
 	}
 
@@ -195,7 +291,7 @@ public class Matrix {
 		outer: for (int i = 0; i < rows; i++)
 			for (int j = 0; j < cols; j++)
 				try {
-					if (matrix2.getElement(i + 1, j + 1) != matrix[i][j]) {
+					if (matrix2.getElement(i + 1, j + 1) != data[index(i, j)]) {
 						flag = false;
 						break outer;
 					}
@@ -225,10 +321,10 @@ public class Matrix {
 	public double getElement(final int row, final int col)
 			throws MatrixIndexOutOfBoundsException {
 
-		if (row > this.rows - 1 || col > this.cols - 1)
+		if (row < 0 || col < 0 || row > this.rows - 1 || col > this.cols - 1)
 			throw new MatrixIndexOutOfBoundsException();
 
-		return matrix[row][col];
+		return data[index(row, col)];
 
 	}
 
@@ -269,15 +365,15 @@ public class Matrix {
 	 */
 	public Matrix getCol(final int col) throws MatrixIndexOutOfBoundsException {
 
-		if (col > this.cols - 1)
+		if (col < 0 || col > this.cols - 1)
 			throw new MatrixIndexOutOfBoundsException();
 
-		double[][] column = new double[this.rows][1];
+		double column[] = new double[this.rows];
 
-		for (int i = 0; i < rows; i++)
-			column[i][0] = matrix[i][col];
+		for (int i = 0, index = index(0, col); i < rows; i++, index += stride)
+			column[i] = data[index];
 
-		return new Matrix(column);
+		return new Matrix(rows, 1, column);
 
 	}
 
@@ -296,15 +392,15 @@ public class Matrix {
 	 */
 	public Matrix getRow(final int row) throws MatrixIndexOutOfBoundsException {
 
-		if (row > this.rows - 1)
+		if (row < 0 || row > this.rows - 1)
 			throw new MatrixIndexOutOfBoundsException();
 
-		double[][] rowmat = new double[1][cols];
+		double rowmat[] = new double[cols];
 
-		for (int i = 0; i < cols; i++)
-			rowmat[0][i] = matrix[row][i];
+		for (int i = 0, index = index(row, 0); i < cols; i++, index += colStride)
+			rowmat[i] = data[index];
 
-		return new Matrix(rowmat);
+		return new Matrix(1, cols, rowmat);
 
 	}
 
@@ -335,7 +431,7 @@ public class Matrix {
 		// check each element
 		outer: for (int i = 0; i < rows; i++)
 			for (int j = 0; j < cols; j++)
-				if (matrix[i][j] != 0) {
+				if (data[index(i, j)] != 0) {
 					flag = false;
 					break outer;
 				}
@@ -362,10 +458,10 @@ public class Matrix {
 	public void set(final int row, final int col, final double value)
 			throws MatrixIndexOutOfBoundsException {
 
-		if (row > this.rows - 1 || col > this.cols - 1)
+		if (row < 0 || col < 0 || row > this.rows - 1 || col > this.cols - 1)
 			throw new MatrixIndexOutOfBoundsException();
 
-		matrix[row][col] = value;
+		data[index(row, col)] = value;
 
 	}
 
@@ -380,12 +476,148 @@ public class Matrix {
 
 		for (int i = 0; i < rows; i++)
 			for (int j = 0; j < cols; j++)
-				result += matrix[i][j];
+				result += data[index(i, j)];
 
 		return result;
 
 	}
 
+	/**
+	 * Get the array backing this matrix. Element (row, col) is stored at index
+	 * getOffset() + row * getStride() + col * getColStride(). The array is not
+	 * copied, so changes to it are reflected in the matrix <br/>
+	 * 
+	 * @return the packed row-major storage of this matrix
+	 */
+	public double[] getData() {
+
+		return this.data;
+
+	}
+
+	/**
+	 * Get the row stride of the backing array, i.e., the distance between the
+	 * first elements of two consecutive rows <br/>
+	 * 
+	 * @return row stride of this matrix
+	 */
+	public int getStride() {
+
+		return this.stride;
+
+	}
+
+	/**
+	 * Get the column stride of the backing array, i.e., the distance between
+	 * two consecutive elements of a row. It is 1 unless this matrix is a
+	 * column-wise view, such as a transposed view <br/>
+	 * 
+	 * @return column stride of this matrix
+	 */
+	public int getColStride() {
+
+		return this.colStride;
+
+	}
+
+	/**
+	 * Get the index of the first element of this matrix in the backing array.
+	 * It is 0 unless this matrix is a view <br/>
+	 * 
+	 * @return offset of this matrix in the backing array
+	 */
+	public int getOffset() {
+
+		return this.offset;
+
+	}
+
+	/**
+	 * Get a view on the specified row of this matrix. The view shares the
+	 * storage of this matrix, so no data is copied <br/>
+	 * 
+	 * @param row
+	 *            the desired row number of this matrix (indexed from 0) <br/>
+	 * 
+	 * @return A row vector backed by the specified row of this matrix <br/>
+	 * 
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the row value specified is not a row of the matrix
+	 */
+	public Matrix rowView(final int row) throws MatrixIndexOutOfBoundsException {
+
+		return subMatrixView(row, 0, 1, cols);
+
+	}
+
+	/**
+	 * Get a view on the specified column of this matrix. The view shares the
+	 * storage of this matrix, so no data is copied <br/>
+	 * 
+	 * @param col
+	 *            the desired column number of this matrix (indexed from 0) <br/>
+	 * 
+	 * @return A column vector backed by the specified column of this matrix <br/>
+	 * 
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the column value specified is not a column of the matrix
+	 */
+	public Matrix colView(final int col) throws MatrixIndexOutOfBoundsException {
+
+		return subMatrixView(0, col, rows, 1);
+
+	}
+
+	/**
+	 * Get a view on the transpose of this matrix. Element (i, j) of the view
+	 * is element (j, i) of this matrix, read from the shared storage <br/>
+	 * 
+	 * @return the transpose of this matrix as a view
+	 */
+	public Matrix transposeView() {
+
+		return new Matrix(data, offset, cols, rows, colStride, stride);
+
+	}
+
+	/**
+	 * Get a view on a rectangular window of this matrix. The view shares the
+	 * storage of this matrix, so no data is copied <br/>
+	 * 
+	 * @param row
+	 *            the row of this matrix at which the window starts (indexed
+	 *            from 0)
+	 * @param col
+	 *            the column of this matrix at which the window starts (indexed
+	 *            from 0)
+	 * @param rows
+	 *            the number of rows in the window
+	 * @param cols
+	 *            the number of columns in the window <br/>
+	 * 
+	 * @return A rows x cols matrix backed by the window of this matrix <br/>
+	 * 
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the window does not lie within this matrix
+	 */
+	public Matrix subMatrixView(final int row, final int col, final int rows,
+			final int cols) throws MatrixIndexOutOfBoundsException {
+
+		if (row < 0 || col < 0 || rows < 1 || cols < 1
+				|| row + rows > this.rows || col + cols > this.cols)
+			throw new MatrixIndexOutOfBoundsException();
+
+		return new Matrix(data, index(row, col), rows, cols, stride, colStride);
+
+	}
+
+	// position of element (row, col) in the backing array
+	private int index(final int row, final int col) {
+
+		return offset + row * stride + col * colStride;
+
+	}
+
 	/**
 	 * Convert the given matrix to a packed 1D array containing all the elements
 	 * row after row <br/>
@@ -397,14 +629,13 @@ public class Matrix {
 		// create the resultant array to store the matrix data
 		double resArray[] = new double[rows * cols];
 
-		int index = 0;
+		// copy row after row, rows are contiguous unless this is a view
 		for (int i = 0; i < rows; i++)
-			for (int j = 0; j < cols; j++) {
-
-				resArray[index] = matrix[i][j];
-				index++; // increment the index of resArray at each iteration
-
-			}
+			if (colStride == 1)
+				System.arraycopy(data, index(i, 0), resArray, i * cols, cols);
+			else
+				for (int j = 0; j < cols; j++)
+					resArray[i * cols + j] = data[index(i, j)];
 
 		return resArray;
 
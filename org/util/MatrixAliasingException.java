@@ -0,0 +1,29 @@
+package org.util;
+
+/**
+ * MatrixAliasingException is thrown when the matrix passed to receive the
+ * result of an operation shares its storage with an operand in a way that
+ * would let the operation overwrite elements it still has to read. <br/>
+ * 
+ * <p>
+ * e.g., when a matrix is passed as both an operand and the result of a
+ * matrix multiplication or a transpose
+ * </p>
+ * <br/>
+ * 
+ * @author Srijith Nair
+ *
+ */
+public class MatrixAliasingException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/*
+	 * Exception that occurs when the result of an operation overlaps one of
+	 * its operands
+	 */
+
+}
@@ -0,0 +1,545 @@
+package org.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+/**
+ * MatrixCodec: a compact serialized form of matrices, for shipping them
+ * between hosts. Hebbian weights are small integers, which take one or two
+ * bytes as varints instead of eight as doubles; matrices of integers are
+ * therefore written as variable-length integers, and all others as raw
+ * doubles. A symmetric matrix is written as its upper triangle only. <br/>
+ *
+ * <pre>
+ * size  field
+ *    4  magic number, the ASCII bytes "HOPZ"
+ *    1  format version, currently 1
+ *    1  encoding: 0 for raw doubles, 1 for integers
+ *    1  flags: bit 0 set if only the upper triangle, with the diagonal, is
+ *       written, row after row
+ *  1-5  number of rows, as a varint
+ *  1-5  number of columns, as a varint
+ *       the elements, in blocks
+ * </pre>
+ *
+ * <p>
+ * The elements are cut into blocks of at most 64 KB, each written as its
+ * length in 4 bytes, its bytes and their CRC-32C in 4 bytes; a block of
+ * length 0 ends the matrix. Raw doubles take 8 big-endian bytes each.
+ * Integers are written as codes in unsigned LEB128 varints, 7 bits to a byte:
+ * an even code 2z stands for the non-zero element whose zigzag form, (v
+ * &lt;&lt; 1) ^ (v &gt;&gt; 63), is z, and an odd code 2r + 1 for a run of r
+ * + 1 zeros, so that the zero diagonal and any sparse stretches cost next to
+ * nothing. An element counts as an integer if it is a whole number of
+ * magnitude at most 2^53 other than -0, so that every matrix is read back
+ * bit for bit as it was written.
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public final class MatrixCodec {
+
+	/**
+	 * Encoding of elements as raw IEEE 754 doubles
+	 */
+	public static final int RAW = 0;
+
+	/**
+	 * Encoding of integer-valued elements as zigzag varints
+	 */
+	public static final int INTEGER = 1;
+
+	private static final int MAGIC = 'H' << 24 | 'O' << 16 | 'P' << 8 | 'Z';
+
+	private static final int VERSION = 1, UPPER = 1;
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	// integers which doubles hold exactly, all of them below it
+	private static final double EXACT = 1L << 53;
+
+	private MatrixCodec() {
+	}
+
+	/*
+	 * The elements of a matrix being written, so that matrices on the heap and
+	 * mapped ones are written alike
+	 */
+	private interface Elements {
+
+		double get(int row, int col);
+
+	}
+
+	/**
+	 * Choose the encoding for a matrix
+	 *
+	 * @param mat
+	 *            the matrix to be written
+	 *
+	 * @return {@link #INTEGER} if all elements are integers, {@link #RAW}
+	 *         otherwise
+	 */
+	public static int encodingOf(final Matrix mat) {
+
+		return encodingOf(mat.getRows(), mat.getCols(), elementsOf(mat));
+
+	}
+
+	/**
+	 * Write a matrix to a stream. The stream is neither buffered nor closed
+	 * here, so callers writing to a file or socket should buffer it <br/>
+	 *
+	 * @param mat
+	 *            the matrix to be written
+	 * @param out
+	 *            the stream to write to
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public static void encode(final Matrix mat, final OutputStream out)
+			throws IOException {
+
+		encode(mat.getRows(), mat.getCols(), elementsOf(mat), out);
+
+	}
+
+	/**
+	 * Write a mapped matrix to a stream, reading the elements straight from
+	 * the mapping, so the matrix need not fit on the heap. The stream is
+	 * neither buffered nor closed here <br/>
+	 *
+	 * @param mat
+	 *            the matrix to be written
+	 * @param out
+	 *            the stream to write to
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public static void encode(final MappedMatrix mat, final OutputStream out)
+			throws IOException {
+
+		encode(mat.getRows(), mat.getCols(), (i, j) -> mat.get(i, j), out);
+
+	}
+
+	private static void encode(final int rows, final int cols,
+			final Elements elements, final OutputStream out)
+			throws IOException {
+
+		final int encoding = encodingOf(rows, cols, elements);
+		final boolean upper = isSymmetric(rows, cols, elements);
+
+		final byte header[] = new byte[17];
+		int length = 0;
+
+		for (int shift = 24; shift >= 0; shift -= 8)
+			header[length++] = (byte) (MAGIC >>> shift);
+		header[length++] = VERSION;
+		header[length++] = (byte) encoding;
+		header[length++] = (byte) (upper ? UPPER : 0);
+		length = putVarint(header, length, rows);
+		length = putVarint(header, length, cols);
+		out.write(header, 0, length);
+
+		final BlockWriter writer = new BlockWriter(out);
+		long zeros = 0;
+
+		for (int i = 0; i < rows; i++)
+			for (int j = upper ? i : 0; j < cols; j++) {
+				final double value = elements.get(i, j);
+
+				if (encoding == RAW)
+					writer.putLong(Double.doubleToRawLongBits(value));
+				else if (value == 0)
+					zeros++;
+				else {
+					if (zeros > 0)
+						writer.putVarint((zeros - 1) << 1 | 1);
+					zeros = 0;
+
+					final long v = (long) value;
+					writer.putVarint(((v << 1) ^ (v >> 63)) << 1);
+				}
+			}
+
+		if (zeros > 0)
+			writer.putVarint((zeros - 1) << 1 | 1);
+
+		writer.finish();
+
+	}
+
+	/**
+	 * Read a matrix written by {@link #encode(Matrix, OutputStream)}. Only
+	 * the bytes of the matrix are read from the stream, so several matrices
+	 * may follow each other in one stream <br/>
+	 *
+	 * @param in
+	 *            the stream to read from, positioned at the matrix
+	 *
+	 * @return the matrix read
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be read, does not hold a matrix in this
+	 *             format, or a block fails its checksum
+	 */
+	public static Matrix decode(final InputStream in) throws IOException {
+
+		final DataInputStream input = new DataInputStream(in);
+
+		if (input.readInt() != MAGIC)
+			throw new IOException("not an encoded matrix");
+		if (input.readUnsignedByte() != VERSION)
+			throw new IOException("unsupported encoding version");
+
+		final int encoding = input.readUnsignedByte();
+		final boolean upper = (input.readUnsignedByte() & UPPER) != 0;
+		final long rows = readVarint(input), cols = readVarint(input);
+
+		if (encoding != RAW && encoding != INTEGER)
+			throw new IOException("unsupported encoding " + encoding);
+		// the order is checked before the product, which could overflow
+		if (rows < 0 || cols < 0 || rows > Integer.MAX_VALUE
+				|| cols > Integer.MAX_VALUE || rows * cols > Integer.MAX_VALUE
+				|| upper && rows != cols)
+			throw new IOException("matrix of order " + rows + " x " + cols
+					+ " cannot be read");
+
+		final Matrix mat = new Matrix((int) rows, (int) cols);
+		final double data[] = mat.getData();
+		final BlockReader reader = new BlockReader(input);
+		long zeros = 0;
+
+		for (int i = 0; i < rows; i++)
+			for (int j = upper ? i : 0; j < cols; j++) {
+				final double value;
+
+				if (encoding == RAW)
+					value = Double.longBitsToDouble(reader.getLong());
+				else if (zeros > 0) {
+					zeros--;
+					value = 0;
+				} else {
+					final long code = reader.getVarint();
+
+					if ((code & 1) != 0) {
+						zeros = code >>> 1;
+						value = 0;
+					} else {
+						final long z = code >>> 1;
+						value = (z >>> 1) ^ -(z & 1);
+					}
+				}
+
+				data[i * (int) cols + j] = value;
+				if (upper)
+					data[j * (int) cols + i] = value;
+			}
+
+		if (zeros > 0 || !reader.finish())
+			throw new IOException("encoded matrix has more elements than "
+					+ rows + " x " + cols);
+
+		return mat;
+
+	}
+
+	/**
+	 * Write a matrix to a file, replacing the file if it exists <br/>
+	 *
+	 * @param path
+	 *            the file to write
+	 * @param mat
+	 *            the matrix to be written
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(final Path path, final Matrix mat)
+			throws IOException {
+
+		try (OutputStream out = new BufferedOutputStream(
+				Files.newOutputStream(path), BLOCK_SIZE)) {
+			encode(mat, out);
+		}
+
+	}
+
+	/**
+	 * Read a matrix from a file written by {@link #write(Path, Matrix)} <br/>
+	 *
+	 * @param path
+	 *            the file to read
+	 *
+	 * @return the matrix in the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a matrix in this
+	 *             format
+	 */
+	public static Matrix read(final Path path) throws IOException {
+
+		try (InputStream in = new BufferedInputStream(
+				Files.newInputStream(path), BLOCK_SIZE)) {
+			return decode(in);
+		}
+
+	}
+
+	private static boolean isInteger(final double value) {
+
+		return value == Math.rint(value) && Math.abs(value) <= EXACT
+				&& (value != 0 || Double.doubleToRawLongBits(value) == 0);
+
+	}
+
+	// whether mat is square and equal, bit for bit, to its transpose
+	private static Elements elementsOf(final Matrix mat) {
+
+		final double data[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride();
+
+		return (i, j) -> data[off + i * stride + j * col];
+
+	}
+
+	private static int encodingOf(final int rows, final int cols,
+			final Elements elements) {
+
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++)
+				if (!isInteger(elements.get(i, j)))
+					return RAW;
+
+		return INTEGER;
+
+	}
+
+	private static boolean isSymmetric(final int rows, final int cols,
+			final Elements elements) {
+
+		if (rows != cols)
+			return false;
+
+		for (int i = 0; i < rows; i++)
+			for (int j = i + 1; j < cols; j++) {
+				final double upper = elements.get(i, j);
+				final double lower = elements.get(j, i);
+
+				if (Double.doubleToRawLongBits(upper) != Double
+						.doubleToRawLongBits(lower))
+					return false;
+			}
+
+		return true;
+
+	}
+
+	private static int putVarint(final byte buffer[], int at, long value) {
+
+		for (; (value & ~0x7FL) != 0; value >>>= 7)
+			buffer[at++] = (byte) (value | 0x80);
+		buffer[at++] = (byte) value;
+
+		return at;
+
+	}
+
+	private static long readVarint(final DataInputStream in)
+			throws IOException {
+
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("malformed varint");
+
+	}
+
+	/*
+	 * Writes bytes to a stream in checksummed blocks
+	 */
+	private static final class BlockWriter {
+
+		private final OutputStream out;
+
+		// the block being filled, after room for its length
+		private final byte block[] = new byte[4 + BLOCK_SIZE + 4];
+
+		private int length;
+
+		private final CRC32C crc = new CRC32C();
+
+		private BlockWriter(final OutputStream out) {
+
+			this.out = out;
+
+		}
+
+		private void putLong(final long value) throws IOException {
+
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				if (length == BLOCK_SIZE)
+					flush();
+				block[4 + length++] = (byte) (value >>> shift);
+			}
+
+		}
+
+		private void putVarint(final long value) throws IOException {
+
+			// a varint takes at most 10 bytes
+			if (length > BLOCK_SIZE - 10)
+				flush();
+			length = MatrixCodec.putVarint(block, 4 + length, value) - 4;
+
+		}
+
+		private void flush() throws IOException {
+
+			putInt(0, length);
+			crc.reset();
+			crc.update(block, 4, length);
+			putInt(4 + length, (int) crc.getValue());
+			out.write(block, 0, 4 + length + 4);
+			length = 0;
+
+		}
+
+		// flush the last block and end the matrix
+		private void finish() throws IOException {
+
+			if (length > 0)
+				flush();
+			putInt(0, 0);
+			out.write(block, 0, 4);
+
+		}
+
+		private void putInt(final int at, final int value) {
+
+			for (int k = 0; k < 4; k++)
+				block[at + k] = (byte) (value >>> 24 - 8 * k);
+
+		}
+
+	}
+
+	/*
+	 * Reads bytes from the checksummed blocks of a stream
+	 */
+	private static final class BlockReader {
+
+		private final DataInputStream in;
+
+		private final byte block[] = new byte[BLOCK_SIZE];
+
+		private int position, length;
+
+		// set once the block ending the matrix has been read
+		private boolean ended;
+
+		private final CRC32C crc = new CRC32C();
+
+		private BlockReader(final DataInputStream in) {
+
+			this.in = in;
+
+		}
+
+		private int get() throws IOException {
+
+			while (position == length)
+				next();
+
+			return block[position++] & 0xFF;
+
+		}
+
+		private long getLong() throws IOException {
+
+			long value = 0;
+
+			for (int k = 0; k < 8; k++)
+				value = value << 8 | get();
+
+			return value;
+
+		}
+
+		private long getVarint() throws IOException {
+
+			long value = 0;
+
+			for (int shift = 0; shift < 64; shift += 7) {
+				final int b = get();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+
+			throw new IOException("malformed varint");
+
+		}
+
+		// read the next block, failing at the end of the matrix
+		private void next() throws IOException {
+
+			if (ended)
+				throw new EOFException("encoded matrix has too few elements");
+
+			length = in.readInt();
+			position = 0;
+
+			if (length < 0 || length > BLOCK_SIZE)
+				throw new IOException("malformed block of " + length
+						+ " bytes");
+
+			if (length == 0) {
+				ended = true;
+				return;
+			}
+
+			in.readFully(block, 0, length);
+			crc.reset();
+			crc.update(block, 0, length);
+
+			if ((int) crc.getValue() != in.readInt())
+				throw new IOException("block fails its checksum");
+
+		}
+
+		// read up to the end of the matrix, true if no bytes were left over
+		private boolean finish() throws IOException {
+
+			if (position < length)
+				return false;
+
+			if (!ended)
+				next();
+
+			return ended;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,515 @@
+package org.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * MatrixFile: the binary file format for matrices, and for the weights of
+ * Hopfield networks in particular. A file is a 64 byte header followed by
+ * the elements as little-endian doubles, 8 byte aligned so that they can be
+ * mapped into memory and used in place. <br/>
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic number, the ASCII bytes "HOPW"
+ *      4     2  format version, currently 1
+ *      6     1  element type: 1 for 64-bit IEEE 754 doubles
+ *      7     1  layout: 0 for dense, row after row;
+ *               1 for the strict upper triangle, row after row
+ *      8     1  flags: bit 0 set if the matrix is symmetric
+ *      9     7  reserved, zero
+ *     16     8  number of rows
+ *     24     8  number of columns
+ *     32     8  number of elements stored
+ *     40     8  CRC-32C of the elements, in the low 32 bits
+ *     48    16  reserved, zero
+ *     64        the elements
+ * </pre>
+ *
+ * All header fields are little-endian. A file is opened by reading its
+ * header only; the elements are then either read onto the heap, checking the
+ * checksum, or mapped, which takes no time however large the file and leaves
+ * the checksum to {@link #verify()}. <br/>
+ *
+ * A file is written under a temporary name in the same directory, forced to
+ * the disk and then renamed over the target, so a crash never leaves a torn
+ * file behind, and mappings of the file it replaces stay valid. <br/>
+ *
+ * @author Srijith Nair
+ *
+ */
+public final class MatrixFile {
+
+	/**
+	 * Layout of dense matrices: all elements, row after row
+	 */
+	public static final int DENSE = 0;
+
+	/**
+	 * Layout of symmetric matrices with a zero diagonal: the strict upper
+	 * triangle, row after row, as held by SymmetricPackedMatrix
+	 */
+	public static final int PACKED = 1;
+
+	private static final int MAGIC = 'H' | 'O' << 8 | 'P' << 16 | 'W' << 24;
+
+	private static final int VERSION = 1, FLOAT64 = 1, SYMMETRIC = 1;
+
+	private static final int HEADER_SIZE = 64;
+
+	// elements are streamed through a buffer of this many bytes
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final Path path;
+
+	private final int layout;
+
+	private final boolean symmetric;
+
+	private final int rows, cols;
+
+	private final long elements, checksum;
+
+	private MatrixFile(final Path path, final ByteBuffer header)
+			throws IOException {
+
+		if (header.getInt(0) != MAGIC)
+			throw new IOException(path + " is not a matrix file");
+		if (header.getShort(4) != VERSION)
+			throw new IOException(path + " has unsupported format version "
+					+ header.getShort(4));
+		if (header.get(6) != FLOAT64)
+			throw new IOException(path + " has unsupported element type "
+					+ header.get(6));
+
+		this.path = path;
+		this.layout = header.get(7);
+		this.symmetric = (header.get(8) & SYMMETRIC) != 0;
+
+		final long rows = header.getLong(16), cols = header.getLong(24);
+
+		if (rows < 0 || cols < 0 || rows > Integer.MAX_VALUE
+				|| cols > Integer.MAX_VALUE)
+			throw new IOException(path + " has a matrix of order " + rows
+					+ " x " + cols);
+
+		this.rows = (int) rows;
+		this.cols = (int) cols;
+		this.elements = header.getLong(32);
+		this.checksum = header.getLong(40);
+
+		if (layout != DENSE && layout != PACKED
+				|| elements != elementCount(layout, this.rows, this.cols))
+			throw new IOException(path + " has an inconsistent header");
+
+	}
+
+	/**
+	 * Open a matrix file by reading its header <br/>
+	 *
+	 * @param path
+	 *            the file to open <br/>
+	 *
+	 * @return the file, ready to be read or mapped
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a matrix in a
+	 *             format this class understands
+	 */
+	public static MatrixFile open(final Path path) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException(path + " is too short for a header");
+
+			final MatrixFile file = new MatrixFile(path, header);
+
+			if (channel.size() < HEADER_SIZE + 8 * file.elements)
+				throw new IOException(path + " is truncated");
+
+			return file;
+		}
+
+	}
+
+	/**
+	 * Write a matrix to a file in the dense layout, replacing the file if it
+	 * exists <br/>
+	 *
+	 * @param path
+	 *            the file to write
+	 * @param mat
+	 *            the matrix to be written
+	 * @param symmetric
+	 *            whether to flag the matrix as symmetric
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(final Path path, final Matrix mat,
+			final boolean symmetric) throws IOException {
+
+		final double data[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride(), rows = mat.getRows(), cols = mat.getCols();
+
+		write(path, DENSE, symmetric, rows, cols, (buffer, first, count) -> {
+			for (long e = first; e < first + count; e++)
+				buffer.putDouble(data[off + (int) (e / cols) * stride
+						+ (int) (e % cols) * col]);
+		});
+
+	}
+
+	/**
+	 * Write a mapped matrix to a file in the dense layout, replacing the file
+	 * if it exists. The elements are streamed from the mapping, so the matrix
+	 * need not fit on the heap, and the file may be the one it is mapped from
+	 * <br/>
+	 *
+	 * @param path
+	 *            the file to write
+	 * @param mat
+	 *            the matrix to be written
+	 * @param symmetric
+	 *            whether to flag the matrix as symmetric
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(final Path path, final MappedMatrix mat,
+			final boolean symmetric) throws IOException {
+
+		write(path, DENSE, symmetric, mat.getRows(), mat.getCols(), (buffer,
+				first, count) -> mat.fill(buffer, first, count));
+
+	}
+
+	/**
+	 * Write a symmetric packed matrix to a file in the packed layout,
+	 * replacing the file if it exists <br/>
+	 *
+	 * @param path
+	 *            the file to write
+	 * @param mat
+	 *            the matrix to be written
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(final Path path, final SymmetricPackedMatrix mat)
+			throws IOException {
+
+		final double data[] = mat.getData();
+
+		write(path, PACKED, true, mat.getSize(), mat.getSize(), (buffer,
+				first, count) -> {
+			for (long e = first; e < first + count; e++)
+				buffer.putDouble(data[(int) e]);
+		});
+
+	}
+
+	/**
+	 * Get the file this was opened from
+	 *
+	 * @return path of the file
+	 */
+	public Path getPath() {
+
+		return this.path;
+
+	}
+
+	/**
+	 * Get the layout of the elements in the file
+	 *
+	 * @return {@link #DENSE} or {@link #PACKED}
+	 */
+	public int getLayout() {
+
+		return this.layout;
+
+	}
+
+	/**
+	 * Check whether the matrix was flagged as symmetric when written
+	 *
+	 * @return true if the matrix is symmetric
+	 */
+	public boolean isSymmetric() {
+
+		return this.symmetric;
+
+	}
+
+	/**
+	 * Get the number of rows of the matrix in the file
+	 *
+	 * @return number of rows
+	 */
+	public int getRows() {
+
+		return this.rows;
+
+	}
+
+	/**
+	 * Get the number of columns of the matrix in the file
+	 *
+	 * @return number of columns
+	 */
+	public int getCols() {
+
+		return this.cols;
+
+	}
+
+	/**
+	 * Get the checksum of the elements, as recorded in the header
+	 *
+	 * @return CRC-32C of the elements
+	 */
+	public long getChecksum() {
+
+		return this.checksum;
+
+	}
+
+	/**
+	 * Get the position in the file of the first element; the elements follow
+	 * it contiguously, 8 bytes each, little-endian
+	 *
+	 * @return offset of the elements in bytes
+	 */
+	public long getDataOffset() {
+
+		return HEADER_SIZE;
+
+	}
+
+	/**
+	 * Read the elements and check them against the checksum in the header <br/>
+	 *
+	 * @return true if the checksum matches
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public boolean verify() throws IOException {
+
+		return read(null) == checksum;
+
+	}
+
+	/**
+	 * Read a dense matrix onto the heap, checking the checksum <br/>
+	 *
+	 * @return the matrix in the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, is not in the dense layout, has
+	 *             too many elements for an array, or fails the checksum
+	 */
+	public Matrix readMatrix() throws IOException {
+
+		if (layout != DENSE || elements > Integer.MAX_VALUE - 8)
+			throw new IOException(path + " cannot be read as a Matrix");
+
+		final double data[] = new double[(int) elements];
+
+		checkSum(read(data));
+
+		return new Matrix(rows, cols, data);
+
+	}
+
+	/**
+	 * Read a symmetric packed matrix onto the heap, checking the checksum <br/>
+	 *
+	 * @return the matrix in the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, is not in the packed layout, or
+	 *             fails the checksum
+	 */
+	public SymmetricPackedMatrix readPacked() throws IOException {
+
+		if (layout != PACKED)
+			throw new IOException(path + " is not in the packed layout");
+
+		final SymmetricPackedMatrix mat = new SymmetricPackedMatrix(rows);
+
+		checkSum(read(mat.getData()));
+
+		return mat;
+
+	}
+
+	/**
+	 * Map a dense matrix into memory. No element is read: pages are loaded
+	 * as they are first used, and the checksum is not checked <br/>
+	 *
+	 * @param mode
+	 *            READ_ONLY, READ_WRITE to change the file through the matrix,
+	 *            or PRIVATE to change a copy private to this process. Both of
+	 *            the latter need write access to the file, though PRIVATE never
+	 *            writes it <br/>
+	 *
+	 * @return the matrix mapped from the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be mapped, cannot be opened for writing
+	 *             in a mode other than READ_ONLY, or is not in the dense layout
+	 */
+	public MappedMatrix map(final FileChannel.MapMode mode) throws IOException {
+
+		if (layout != DENSE)
+			throw new IOException(path + " is not in the dense layout");
+
+		// private mappings also need a writable channel, though the file
+		// itself is never written
+		final boolean writable = mode != FileChannel.MapMode.READ_ONLY;
+
+		// a mapping stays valid after its channel is closed
+		try (FileChannel channel = writable ? FileChannel.open(path,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(path, StandardOpenOption.READ)) {
+			return new MappedMatrix(channel, mode, HEADER_SIZE, rows, cols,
+					ByteOrder.LITTLE_ENDIAN);
+		}
+
+	}
+
+	/*
+	 * Fills a buffer with count elements, starting from element first in the
+	 * order of the layout
+	 */
+	private interface ElementSource {
+
+		void fill(ByteBuffer buffer, long first, int count);
+
+	}
+
+	private static long elementCount(final int layout, final int rows,
+			final int cols) {
+
+		return layout == DENSE ? (long) rows * cols : (long) rows
+				* (rows - 1) / 2;
+
+	}
+
+	private static void write(final Path path, final int layout,
+			final boolean symmetric, final int rows, final int cols,
+			final ElementSource source) throws IOException {
+
+		final long elements = elementCount(layout, rows, cols);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final CRC32C crc = new CRC32C();
+		final Path partial = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(partial,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			long position = HEADER_SIZE;
+
+			for (long first = 0; first < elements;) {
+				final int count = (int) Math.min(BUFFER_SIZE / 8, elements
+						- first);
+
+				buffer.clear();
+				source.fill(buffer, first, count);
+				buffer.flip();
+				crc.update(buffer.duplicate());
+
+				while (buffer.hasRemaining())
+					position += channel.write(buffer, position);
+
+				first += count;
+			}
+
+			// the header goes last, so a partly written file has no magic
+			buffer.clear();
+			buffer.putInt(MAGIC).putShort((short) VERSION).put((byte) FLOAT64)
+					.put((byte) layout).put((byte) (symmetric ? SYMMETRIC : 0))
+					.put(new byte[7]).putLong(rows).putLong(cols)
+					.putLong(elements).putLong(crc.getValue())
+					.put(new byte[16]);
+			buffer.flip();
+
+			for (long at = 0; buffer.hasRemaining();)
+				at += channel.write(buffer, at);
+
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(partial);
+			throw e;
+		}
+
+		// the old file, and any mapping of it, is replaced only once whole
+		Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	/*
+	 * Stream the elements through a buffer, copying them into data unless it
+	 * is null, and return their checksum
+	 */
+	private long read(final double data[]) throws IOException {
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final CRC32C crc = new CRC32C();
+
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+
+			long position = HEADER_SIZE;
+
+			for (long first = 0; first < elements;) {
+				final int count = (int) Math.min(BUFFER_SIZE / 8, elements
+						- first);
+
+				buffer.clear().limit(8 * count);
+
+				while (buffer.hasRemaining())
+					if (channel.read(buffer, position + buffer.position()) < 0)
+						throw new IOException(path + " is truncated");
+
+				buffer.flip();
+				crc.update(buffer.duplicate());
+
+				if (data != null)
+					buffer.asDoubleBuffer().get(data, (int) first, count);
+
+				position += 8L * count;
+				first += count;
+			}
+		}
+
+		return crc.getValue();
+
+	}
+
+	private void checkSum(final long actual) throws IOException {
+
+		if (actual != checksum)
+			throw new IOException(path + " fails its checksum");
+
+	}
+
+}
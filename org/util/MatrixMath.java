@@ -1,5 +1,7 @@
 package org.util;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This class is more like a utility class with methods that abstract the basic
  * arithmetic operations on matrices. All methods in this class are static as
@@ -8,12 +10,38 @@ package org.util;
  * provided, (for example, if a non vector is provided for dot product
  * calculation, or if the two matrices provided are not compatible to add or
  * multiply), various Exceptions are thrown. <br/>
+ * <p>
+ * Operations on large matrices are split into blocks of rows and run on a
+ * fork/join pool. Inputs with less work than the parallel threshold are
+ * processed on the calling thread.
+ * </p>
+ * <p>
+ * If the JVM runs with the jdk.incubator.vector module and the SimdKernels
+ * class of the optional/vector source root, loops over contiguous elements
+ * use SIMD instructions. Element-wise results are
+ * identical to the scalar loops; sums such as dot products may differ in the
+ * last bits, as described in VectorKernels.
+ * </p>
  * 
  * @author Srijith Nair
  */
 
 public class MatrixMath {
 
+	// default tile sizes of the multiplication kernel
+	private static volatile int blockRows = 64, blockDepth = 128,
+			blockCols = 256;
+
+	// pool running the row blocks of large operations, null for serial only
+	private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// least number of element operations worth splitting across threads
+	private static volatile long parallelThreshold = 1 << 16;
+
+	// loops over contiguous runs of elements, vectorized when available
+	private static volatile VectorKernels kernels = VectorKernels.SIMD != null
+			? VectorKernels.SIMD : VectorKernels.SCALAR;
+
 	/**
 	 * Add two matrices. <br/>
 	 * 
@@ -35,17 +63,42 @@ public class MatrixMath {
 		if ((a.getRows() != b.getRows()) || (a.getCols() != b.getCols()))
 			throw new MatrixIncompatibilityException();
 
-		double[][] res = new double[a.getRows()][a.getCols()];
+		final Matrix res = new Matrix(a.getRows(), a.getCols());
 
-		for (int i = 0; i < a.getRows(); i++)
-			for (int j = 0; j < a.getCols(); j++)
-				try {
-					res[i][j] = a.getElement(i, j)
-							+ b.getElement(i, j);
-				} catch (MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
-				}
-		return new Matrix(res);
+		addInto(a, b, res);
+		return res;
+
+	}
+
+	/**
+	 * Add two matrices and store the sum in the given result matrix. The
+	 * result may be one of the operands, in which case that operand is
+	 * updated in place. <br/>
+	 * 
+	 * @param a
+	 *            first matrix to be added
+	 * @param b
+	 *            second matrix to be added (of the same order as a)
+	 * @param result
+	 *            the matrix in which the sum is stored (of the same order as
+	 *            a) <br/>
+	 * 
+	 * @return the result matrix, holding the sum of a and b <br/>
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             If the three matrices are not of the same order.
+	 * @throws MatrixAliasingException
+	 *             If the result shares storage with an operand without being
+	 *             that operand
+	 */
+	public static Matrix add(final Matrix a, final Matrix b,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		checkElementWise(a, b, result);
+
+		addInto(a, b, result);
+		return result;
 
 	}
 
@@ -69,17 +122,41 @@ public class MatrixMath {
 		if ((a.getRows() != b.getRows()) || (a.getCols() != b.getCols()))
 			throw new MatrixIncompatibilityException();
 
-		double[][] res = new double[a.getRows()][a.getCols()];
+		final Matrix res = new Matrix(a.getRows(), a.getCols());
 
-		for (int i = 0; i < a.getRows(); i++)
-			for (int j = 0; j < a.getCols(); j++)
-				try {
-					res[i][j] = a.getElement(i, j)
-							- b.getElement(i, j);
-				} catch (MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
-				}
-		return new Matrix(res);
+		subtractInto(a, b, res);
+		return res;
+
+	}
+
+	/**
+	 * Subtract the second matrix from the first and store the difference in
+	 * the given result matrix. The result may be one of the operands, in which
+	 * case that operand is updated in place. <br/>
+	 * 
+	 * @param a
+	 *            the matrix from which the other will be subtracted
+	 * @param b
+	 *            the matrix which subtracts the other
+	 * @param result
+	 *            the matrix in which the difference is stored <br/>
+	 * 
+	 * @return the result matrix, holding a - b <br/>
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             If the three matrices are not of the same order
+	 * @throws MatrixAliasingException
+	 *             If the result shares storage with an operand without being
+	 *             that operand
+	 */
+	public static Matrix subtract(final Matrix a, final Matrix b,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		checkElementWise(a, b, result);
+
+		subtractInto(a, b, result);
+		return result;
 
 	}
 
@@ -96,16 +173,41 @@ public class MatrixMath {
 	 */
 	public static Matrix divide(final Matrix mat, final double divisor) {
 
-		double[][] res = new double[mat.getRows()][mat.getCols()];
+		final Matrix res = new Matrix(mat.getRows(), mat.getCols());
 
-		for (int i = 0; i < mat.getRows(); i++)
-			for (int j = 0; j < mat.getCols(); j++)
-				try {
-					res[i][j] = mat.getElement(i, j) / divisor;
-				} catch (MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
-				}
-		return new Matrix(res);
+		divideInto(mat, divisor, res);
+		return res;
+
+	}
+
+	/**
+	 * Divide a matrix by a constant double value and store the quotient in the
+	 * given result matrix, which may be mat itself <br/>
+	 * 
+	 * @param mat
+	 *            the matrix to be divided
+	 * @param divisor
+	 *            the value used for division
+	 * @param result
+	 *            the matrix in which the quotient is stored (of the same order
+	 *            as mat) <br/>
+	 * 
+	 * @return the result matrix, with each element equal to the corresponding
+	 *         element in mat divided by the divisor.
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             If result is not of the same order as mat
+	 * @throws MatrixAliasingException
+	 *             If result shares storage with mat without being mat
+	 */
+	public static Matrix divide(final Matrix mat, final double divisor,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		checkElementWise(mat, mat, result);
+
+		divideInto(mat, divisor, result);
+		return result;
 
 	}
 
@@ -131,17 +233,25 @@ public class MatrixMath {
 		if (!(vector1.isVector() && vector2.isVector()))
 			throw new NotVectorException();
 
-		double[] vecArray1 = vector1.toPackedArray();
-		double[] vecArray2 = vector2.toPackedArray();
+		final int length = vector1.getRows() * vector1.getCols();
 
 		// ensure that their lengths match
-		if (vecArray1.length != vecArray2.length)
+		if (length != vector2.getRows() * vector2.getCols())
 			throw new MatrixIncompatibilityException();
 
+		// a vector is a single row or a single column of its packed storage
+		final double vecArray1[] = vector1.getData();
+		final double vecArray2[] = vector2.getData();
+		final int inc1 = increment(vector1), inc2 = increment(vector2);
+
 		double result = 0;
+		int i1 = vector1.getOffset(), i2 = vector2.getOffset();
+
+		if (inc1 == 1 && inc2 == 1)
+			return kernels.dot(vecArray1, i1, vecArray2, i2, length);
 
-		for (int i = 0; i < vecArray1.length; i++)
-			result += vecArray1[i] * vecArray2[i];
+		for (int i = 0; i < length; i++, i1 += inc1, i2 += inc2)
+			result += vecArray1[i1] * vecArray2[i2];
 
 		return result;
 
@@ -159,13 +269,11 @@ public class MatrixMath {
 	public static Matrix identity(final int size) {
 
 		final Matrix id = new Matrix(size, size);
+		final double data[] = id.getData();
 
 		for (int i = 0; i < size; i++)
-			try {
-				id.set(i, i, 1);
-			} catch (MatrixIndexOutOfBoundsException e) {
-				e.printStackTrace();
-			}
+			data[i * id.getStride() + i] = 1;
+
 		return id;
 
 	}
@@ -183,17 +291,42 @@ public class MatrixMath {
 	 */
 	public static Matrix multiply(final Matrix mat, final double multiplier) {
 
-		double[][] res = new double[mat.getRows()][mat.getCols()];
+		final Matrix res = new Matrix(mat.getRows(), mat.getCols());
 
-		for (int i = 0; i < mat.getRows(); i++)
-			for (int j = 0; j < mat.getCols(); j++)
-				try {
-					res[i][j] = mat.getElement(i, j) * multiplier;
-				} catch (MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
-				}
+		multiplyInto(mat, multiplier, res);
+
+		return res;
+
+	}
+
+	/**
+	 * Multiply the given matrix with a scalar and store the product in the
+	 * given result matrix, which may be mat itself<br/>
+	 * 
+	 * @param mat
+	 *            the matrix on which the multiplication is to be carried out
+	 * @param multiplier
+	 *            the scalar multiplied to the matrix
+	 * @param result
+	 *            the matrix in which the product is stored (of the same order
+	 *            as mat) <br/>
+	 * 
+	 * @return the result matrix, with each element as the corresponding
+	 *         element in mat multiplied with the multiplier
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             If result is not of the same order as mat
+	 * @throws MatrixAliasingException
+	 *             If result shares storage with mat without being mat
+	 */
+	public static Matrix multiply(final Matrix mat, final double multiplier,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		checkElementWise(mat, mat, result);
 
-		return new Matrix(res);
+		multiplyInto(mat, multiplier, result);
+		return result;
 
 	}
 
@@ -214,21 +347,808 @@ public class MatrixMath {
 	public static Matrix multiply(final Matrix a, final Matrix b)
 			throws MatrixIncompatibilityException {
 
+		return multiply(a, b, blockRows, blockDepth, blockCols);
+
+	}
+
+	/**
+	 * Multiply the two matrices if compatible, using the given block sizes
+	 * for the tiled multiplication kernel. The kernel works on tiles of
+	 * blockRows x blockDepth elements of a and blockDepth x blockCols
+	 * elements of b, so that both tiles stay in cache while they are being
+	 * used. No memory other than the product matrix is allocated.<br/>
+	 * 
+	 * @param a
+	 *            pre-multiplication matrix
+	 * @param b
+	 *            post-multiplication matrix
+	 * @param blockRows
+	 *            number of rows of a in one tile
+	 * @param blockDepth
+	 *            number of columns of a (rows of b) in one tile
+	 * @param blockCols
+	 *            number of columns of b in one tile<br/>
+	 * 
+	 * @return product matrix of a*b<br/>
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if number of columns in matrix a is unequal to the number of
+	 *             rows in matrix b.
+	 */
+	public static Matrix multiply(final Matrix a, final Matrix b,
+			final int blockRows, final int blockDepth, final int blockCols)
+			throws MatrixIncompatibilityException {
+
 		if (a.getCols() != b.getRows())
 			throw new MatrixIncompatibilityException();
 
-		double[][] res = new double[a.getRows()][b.getCols()];
+		checkBlockSizes(blockRows, blockDepth, blockCols);
+
+		final Matrix res = new Matrix(a.getRows(), b.getCols());
+
+		multiplyInto(a, b, res, blockRows, blockDepth, blockCols);
+
+		return res;
 
-		for (int i = 0; i < a.getRows(); i++)
-			for (int j = 0; j < b.getCols(); j++)
-				try {
-					res[i][j] = MatrixMath.dotProduct(a.getRow(i),
-							b.getCol(j));
-				} catch (NotVectorException | MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
+	}
+
+	/**
+	 * Multiply the two matrices if compatible and store the product in the
+	 * given result matrix. Since every element of the product depends on a
+	 * whole row of a and column of b, the result cannot share storage with
+	 * either operand. <br/>
+	 * 
+	 * @param a
+	 *            pre-multiplication matrix
+	 * @param b
+	 *            post-multiplication matrix
+	 * @param result
+	 *            the matrix in which the product is stored, with as many rows
+	 *            as a and as many columns as b <br/>
+	 * 
+	 * @return the result matrix, holding a*b <br/>
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if number of columns in matrix a is unequal to the number of
+	 *             rows in matrix b, or the result is not of the order of the
+	 *             product
+	 * @throws MatrixAliasingException
+	 *             if the result shares storage with a or b
+	 */
+	public static Matrix multiply(final Matrix a, final Matrix b,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		if (a.getCols() != b.getRows() || result.getRows() != a.getRows()
+				|| result.getCols() != b.getCols())
+			throw new MatrixIncompatibilityException();
+
+		if (result.getData() == a.getData() || result.getData() == b.getData())
+			throw new MatrixAliasingException();
+
+		multiplyInto(a, b, result, blockRows, blockDepth, blockCols);
+
+		return result;
+
+	}
+
+	/**
+	 * Add the scaled outer product of two vectors to a matrix in place, i.e.,
+	 * a = a + alpha * x * y<sup>T</sup>. The update is done in a single pass
+	 * over a without any temporary matrices. If the diagonal is masked, the
+	 * elements a(i, i) are left untouched, which is what Hebbian learning
+	 * needs when no neuron may be connected to itself. The vectors x and y
+	 * must not be views on the storage of a.<br/>
+	 * 
+	 * @param a
+	 *            the matrix to be updated
+	 * @param alpha
+	 *            the scalar by which the outer product is multiplied
+	 * @param x
+	 *            a vector with as many elements as a has rows
+	 * @param y
+	 *            a vector with as many elements as a has columns
+	 * @param maskDiagonal
+	 *            true if the diagonal of a must not be updated<br/>
+	 * 
+	 * @return the updated matrix a
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and y do not match the order of a
+	 * @throws NotVectorException
+	 *             if x or y is not a vector
+	 */
+	public static Matrix rankOneUpdate(final Matrix a, final double alpha,
+			final Matrix x, final Matrix y, final boolean maskDiagonal)
+			throws MatrixIncompatibilityException, NotVectorException {
+
+		if (!(x.isVector() && y.isVector()))
+			throw new NotVectorException();
+
+		final int rows = a.getRows(), cols = a.getCols();
+
+		if (x.getRows() * x.getCols() != rows
+				|| y.getRows() * y.getCols() != cols)
+			throw new MatrixIncompatibilityException();
+
+		final double data[] = a.getData(), xData[] = x.getData(), yData[] = y
+				.getData();
+		final int off = a.getOffset(), stride = a.getStride(), col = a
+				.getColStride();
+		final int xOff = x.getOffset(), xInc = increment(x);
+		final int yOff = y.getOffset(), yInc = increment(y);
+		final boolean contiguous = col == 1 && yInc == 1;
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				final double ax = alpha * xData[xOff + i * xInc];
+				final int ai = off + i * stride;
+
+				if (ax == 0)
+					continue;
+
+				// with a masked diagonal, skip column i instead of testing
+				// every column against it
+				final int skip = maskDiagonal ? i : cols;
+				final int head = Math.min(skip, cols);
+
+				if (contiguous) {
+					k.axpy(ax, yData, yOff, data, ai, head);
+					if (skip + 1 < cols)
+						k.axpy(ax, yData, yOff + skip + 1, data, ai + skip + 1,
+								cols - skip - 1);
+					continue;
 				}
 
-		return new Matrix(res);
+				for (int j = 0; j < head; j++)
+					data[ai + j * col] += ax * yData[yOff + j * yInc];
+				for (int j = skip + 1; j < cols; j++)
+					data[ai + j * col] += ax * yData[yOff + j * yInc];
+			}
+		});
+
+		return a;
+
+	}
+
+	/**
+	 * Multiply the two matrices and add the product to the given result
+	 * matrix, i.e., result = result + a*b, using the tiled multiplication
+	 * kernel. The result cannot share storage with either operand. <br/>
+	 * 
+	 * @param a
+	 *            pre-multiplication matrix
+	 * @param b
+	 *            post-multiplication matrix
+	 * @param result
+	 *            the matrix to which the product is added, with as many rows
+	 *            as a and as many columns as b <br/>
+	 * 
+	 * @return the result matrix, holding its former value plus a*b <br/>
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if number of columns in matrix a is unequal to the number of
+	 *             rows in matrix b, or the result is not of the order of the
+	 *             product
+	 * @throws MatrixAliasingException
+	 *             if the result shares storage with a or b
+	 */
+	public static Matrix multiplyAdd(final Matrix a, final Matrix b,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		if (a.getCols() != b.getRows() || result.getRows() != a.getRows()
+				|| result.getCols() != b.getCols())
+			throw new MatrixIncompatibilityException();
+
+		if (result.getData() == a.getData() || result.getData() == b.getData())
+			throw new MatrixAliasingException();
+
+		final int rows = blockRows, depth = blockDepth, cols = blockCols;
+
+		ParallelRows.run(pool, parallelThreshold, a.getRows(),
+				(long) a.getCols() * b.getCols(),
+				(from, to) -> multiplyBlocked(a, b, result, from, to, rows,
+						depth, cols));
+
+		return result;
+
+	}
+
+	/**
+	 * Multiply a row vector with a matrix, i.e., compute x*a, and store the
+	 * resulting row vector in result. <br/>
+	 * 
+	 * @param x
+	 *            a vector with as many elements as a has rows
+	 * @param a
+	 *            the matrix to be multiplied
+	 * @param result
+	 *            a vector with as many elements as a has columns, which must
+	 *            not share storage with x or a
+	 * @param symmetric
+	 *            true if a is known to be symmetric. Then x*a equals a*x, and
+	 *            each element of the result is computed as the dot product of
+	 *            x with a row of a, which reads a row after row and splits
+	 *            across threads without contention. Otherwise the rows of a,
+	 *            scaled by the elements of x, are accumulated into the result;
+	 *            this also reads a row after row, but only splits across
+	 *            threads by columns. <br/>
+	 * 
+	 * @return the result vector, holding x*a
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and result do not match the order of a,
+	 *             or a is not square when declared symmetric
+	 * @throws NotVectorException
+	 *             if x or result is not a vector
+	 * @throws MatrixAliasingException
+	 *             if the result shares storage with x or a
+	 */
+	public static Matrix vectorMultiply(final Matrix x, final Matrix a,
+			final Matrix result, final boolean symmetric)
+			throws MatrixIncompatibilityException, NotVectorException,
+			MatrixAliasingException {
+
+		if (!(x.isVector() && result.isVector()))
+			throw new NotVectorException();
+
+		final int rows = a.getRows(), cols = a.getCols();
+
+		if (x.getRows() * x.getCols() != rows
+				|| result.getRows() * result.getCols() != cols
+				|| (symmetric && rows != cols))
+			throw new MatrixIncompatibilityException();
+
+		if (result.getData() == x.getData() || result.getData() == a.getData())
+			throw new MatrixAliasingException();
+
+		final double data[] = a.getData(), xData[] = x.getData(), res[] = result
+				.getData();
+		final int off = a.getOffset(), stride = a.getStride(), col = a
+				.getColStride();
+		final int xOff = x.getOffset(), xInc = increment(x);
+		final int rOff = result.getOffset(), rInc = increment(result);
+		final VectorKernels k = kernels;
+
+		if (symmetric)
+			ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+				for (int i = from; i < to; i++) {
+					int ai = off + i * stride, xj = xOff;
+					if (col == 1 && xInc == 1) {
+						res[rOff + i * rInc] = k.dot(data, ai, xData, xOff, cols);
+						continue;
+					}
+					double sum = 0;
+					for (int j = 0; j < cols; j++, ai += col, xj += xInc)
+						sum += data[ai] * xData[xj];
+					res[rOff + i * rInc] = sum;
+				}
+			});
+		else
+			ParallelRows.run(pool, parallelThreshold, cols, rows, (from, to) -> {
+				for (int j = from; j < to; j++)
+					res[rOff + j * rInc] = 0;
+				for (int i = 0; i < rows; i++) {
+					final double xi = xData[xOff + i * xInc];
+					int ai = off + i * stride + from * col;
+					if (col == 1 && rInc == 1) {
+						k.axpy(xi, data, ai, res, rOff + from, to - from);
+						continue;
+					}
+					for (int j = from; j < to; j++, ai += col)
+						res[rOff + j * rInc] += xi * data[ai];
+				}
+			});
+
+		return result;
+
+	}
+
+	/**
+	 * Multiply a symmetric packed matrix with a vector, i.e., compute a*x,
+	 * which for a symmetric matrix equals x*a. Each packed row i is read once
+	 * and used twice: as part of row i, in a dot product with x, and as part
+	 * of column i, scaled by x(i) and added into the result. <br/>
+	 * 
+	 * @param a
+	 *            the symmetric packed matrix
+	 * @param x
+	 *            a vector with as many elements as a has rows
+	 * @param result
+	 *            a vector of the same length as x, which must not share
+	 *            storage with x <br/>
+	 * 
+	 * @return the result vector, holding a*x
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if the lengths of x and result do not match the order of a
+	 * @throws NotVectorException
+	 *             if x or result is not a vector
+	 * @throws MatrixAliasingException
+	 *             if the result shares storage with x
+	 */
+	public static Matrix vectorMultiply(final SymmetricPackedMatrix a,
+			final Matrix x, final Matrix result)
+			throws MatrixIncompatibilityException, NotVectorException,
+			MatrixAliasingException {
+
+		if (!(x.isVector() && result.isVector()))
+			throw new NotVectorException();
+
+		final int size = a.getSize();
+
+		if (x.getRows() * x.getCols() != size
+				|| result.getRows() * result.getCols() != size)
+			throw new MatrixIncompatibilityException();
+
+		if (result.getData() == x.getData())
+			throw new MatrixAliasingException();
+
+		final double data[] = a.getData(), xData[] = x.getData(), res[] = result
+				.getData();
+		final int xOff = x.getOffset(), xInc = increment(x);
+		final int rOff = result.getOffset(), rInc = increment(result);
+		final VectorKernels k = kernels;
+
+		for (int i = 0; i < size; i++)
+			res[rOff + i * rInc] = 0;
+
+		for (int i = 0; i < size; i++) {
+			final int start = a.rowStart(i), length = size - i - 1;
+			final double xi = xData[xOff + i * xInc];
+
+			if (xInc == 1 && rInc == 1) {
+				res[rOff + i] += k.dot(data, start, xData, xOff + i + 1, length);
+				k.axpy(xi, data, start, res, rOff + i + 1, length);
+				continue;
+			}
+
+			double sum = 0;
+			for (int j = i + 1, p = start; j < size; j++, p++) {
+				sum += data[p] * xData[xOff + j * xInc];
+				res[rOff + j * rInc] += xi * data[p];
+			}
+			res[rOff + i * rInc] += sum;
+		}
+
+		return result;
+
+	}
+
+	/**
+	 * Add the scaled outer product of a vector with itself to a symmetric
+	 * packed matrix in place, i.e., a = a + alpha * x * x<sup>T</sup>, leaving
+	 * the diagonal at zero. Only the packed upper triangle is updated, in a
+	 * single pass. <br/>
+	 * 
+	 * @param a
+	 *            the symmetric packed matrix to be updated
+	 * @param alpha
+	 *            the scalar by which the outer product is multiplied
+	 * @param x
+	 *            a vector with as many elements as a has rows <br/>
+	 * 
+	 * @return the updated matrix a
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if the length of x does not match the order of a
+	 * @throws NotVectorException
+	 *             if x is not a vector
+	 */
+	public static SymmetricPackedMatrix rankOneUpdate(
+			final SymmetricPackedMatrix a, final double alpha, final Matrix x)
+			throws MatrixIncompatibilityException, NotVectorException {
+
+		if (!x.isVector())
+			throw new NotVectorException();
+
+		final int size = a.getSize();
+
+		if (x.getRows() * x.getCols() != size)
+			throw new MatrixIncompatibilityException();
+
+		final double data[] = a.getData(), xData[] = x.getData();
+		final int xOff = x.getOffset(), xInc = increment(x);
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, size, size / 2, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				final double ax = alpha * xData[xOff + i * xInc];
+				final int start = a.rowStart(i), length = size - i - 1;
+
+				if (xInc == 1)
+					k.axpy(ax, xData, xOff + i + 1, data, start, length);
+				else
+					for (int j = 0; j < length; j++)
+						data[start + j] += ax * xData[xOff + (i + 1 + j) * xInc];
+			}
+		});
+
+		return a;
+
+	}
+
+	/**
+	 * Set the default block sizes used by {@link #multiply(Matrix, Matrix)}.
+	 * The best values depend on the cache sizes of the machine; the defaults
+	 * keep a tile of each operand within a typical 256 KB L2 cache.<br/>
+	 * 
+	 * @param rows
+	 *            number of rows of the left operand in one tile
+	 * @param depth
+	 *            number of columns of the left operand in one tile
+	 * @param cols
+	 *            number of columns of the right operand in one tile
+	 */
+	public static void setBlockSizes(final int rows, final int depth,
+			final int cols) {
+
+		checkBlockSizes(rows, depth, cols);
+
+		blockRows = rows;
+		blockDepth = depth;
+		blockCols = cols;
+
+	}
+
+	/**
+	 * Set the fork/join pool on which large matrix operations are run. Passing
+	 * null makes every operation run on the calling thread.<br/>
+	 * 
+	 * @param forkJoinPool
+	 *            the pool to use, or null to disable parallel execution
+	 */
+	public static void setPool(final ForkJoinPool forkJoinPool) {
+
+		pool = forkJoinPool;
+
+	}
+
+	/**
+	 * Get the fork/join pool on which large matrix operations are run <br/>
+	 * 
+	 * @return the pool in use, or null if parallel execution is disabled
+	 */
+	public static ForkJoinPool getPool() {
+
+		return pool;
+
+	}
+
+	/**
+	 * Set the least amount of work, counted in element operations (e.g. one
+	 * addition, or one multiply-add of a product), for which an operation is
+	 * split across the threads of the pool. Smaller inputs are processed
+	 * serially since the cost of forking would outweigh the gain.<br/>
+	 * 
+	 * @param threshold
+	 *            the number of element operations above which work is split
+	 */
+	public static void setParallelThreshold(final long threshold) {
+
+		if (threshold < 1)
+			throw new IllegalArgumentException("threshold must be positive");
+
+		parallelThreshold = threshold;
+
+	}
+
+	/**
+	 * Get the least amount of work for which an operation is split across
+	 * the threads of the pool <br/>
+	 * 
+	 * @return the number of element operations above which work is split
+	 */
+	public static long getParallelThreshold() {
+
+		return parallelThreshold;
+
+	}
+
+	/**
+	 * Check whether the SIMD kernels can be used, i.e., whether they were
+	 * compiled and the JVM runs with the jdk.incubator.vector module <br/>
+	 * 
+	 * @return true if the SIMD kernels are available
+	 */
+	public static boolean isSimdAvailable() {
+
+		return VectorKernels.SIMD != null;
+
+	}
+
+	/**
+	 * Switch between the SIMD kernels and the scalar loops. The SIMD kernels
+	 * are used by default whenever they are available; asking for them when
+	 * they are not leaves the scalar loops in place.<br/>
+	 * 
+	 * @param enabled
+	 *            true to use the SIMD kernels if available, false for the
+	 *            scalar loops
+	 * 
+	 * @return true if the SIMD kernels are now in use
+	 */
+	public static boolean setSimdEnabled(final boolean enabled) {
+
+		kernels = enabled && VectorKernels.SIMD != null ? VectorKernels.SIMD
+				: VectorKernels.SCALAR;
+
+		return kernels != VectorKernels.SCALAR;
+
+	}
+
+	private static void checkBlockSizes(final int rows, final int depth,
+			final int cols) {
+
+		if (rows < 1 || depth < 1 || cols < 1)
+			throw new IllegalArgumentException("block sizes must be positive");
+
+	}
+
+	/*
+	 * Ensure that a, b and result are of the same order, and that result
+	 * either has storage of its own or is laid out exactly like the operand
+	 * whose storage it shares, so that element (i, j) of the result is only
+	 * ever computed from element (i, j) of the operands.
+	 */
+	private static void checkElementWise(final Matrix a, final Matrix b,
+			final Matrix result) throws MatrixIncompatibilityException,
+			MatrixAliasingException {
+
+		if (a.getRows() != b.getRows() || a.getCols() != b.getCols()
+				|| a.getRows() != result.getRows()
+				|| a.getCols() != result.getCols())
+			throw new MatrixIncompatibilityException();
+
+		if (!sameLayout(result, a) || !sameLayout(result, b))
+			throw new MatrixAliasingException();
+
+	}
+
+	private static boolean sameLayout(final Matrix result, final Matrix operand) {
+
+		return result.getData() != operand.getData()
+				|| (result.getOffset() == operand.getOffset()
+						&& result.getStride() == operand.getStride() && result
+						.getColStride() == operand.getColStride());
+
+	}
+
+	// distance in the backing array between two consecutive vector elements
+	private static int increment(final Matrix vector) {
+
+		return vector.getRows() == 1 ? vector.getColStride() : vector
+				.getStride();
+
+	}
+
+	private static void addInto(final Matrix a, final Matrix b,
+			final Matrix result) {
+
+		final int rows = a.getRows(), cols = a.getCols();
+		final double aData[] = a.getData(), bData[] = b.getData(), res[] = result
+				.getData();
+		final int aOff = a.getOffset(), bOff = b.getOffset(), rOff = result
+				.getOffset();
+		final int aStride = a.getStride(), bStride = b.getStride(), rStride = result
+				.getStride();
+		final int aCol = a.getColStride(), bCol = b.getColStride(), rCol = result
+				.getColStride();
+		final boolean contiguous = aCol == 1 && bCol == 1 && rCol == 1;
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int ai = aOff + i * aStride, bi = bOff + i * bStride, ri = rOff
+						+ i * rStride;
+				if (contiguous)
+					k.add(aData, ai, bData, bi, res, ri, cols);
+				else
+					for (int j = 0; j < cols; j++, ai += aCol, bi += bCol, ri += rCol)
+						res[ri] = aData[ai] + bData[bi];
+			}
+		});
+
+	}
+
+	private static void subtractInto(final Matrix a, final Matrix b,
+			final Matrix result) {
+
+		final int rows = a.getRows(), cols = a.getCols();
+		final double aData[] = a.getData(), bData[] = b.getData(), res[] = result
+				.getData();
+		final int aOff = a.getOffset(), bOff = b.getOffset(), rOff = result
+				.getOffset();
+		final int aStride = a.getStride(), bStride = b.getStride(), rStride = result
+				.getStride();
+		final int aCol = a.getColStride(), bCol = b.getColStride(), rCol = result
+				.getColStride();
+		final boolean contiguous = aCol == 1 && bCol == 1 && rCol == 1;
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int ai = aOff + i * aStride, bi = bOff + i * bStride, ri = rOff
+						+ i * rStride;
+				if (contiguous)
+					k.subtract(aData, ai, bData, bi, res, ri, cols);
+				else
+					for (int j = 0; j < cols; j++, ai += aCol, bi += bCol, ri += rCol)
+						res[ri] = aData[ai] - bData[bi];
+			}
+		});
+
+	}
+
+	private static void divideInto(final Matrix mat, final double divisor,
+			final Matrix result) {
+
+		final int rows = mat.getRows(), cols = mat.getCols();
+		final double data[] = mat.getData(), res[] = result.getData();
+		final int off = mat.getOffset(), rOff = result.getOffset();
+		final int stride = mat.getStride(), rStride = result.getStride();
+		final int col = mat.getColStride(), rCol = result.getColStride();
+		final boolean contiguous = col == 1 && rCol == 1;
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int mi = off + i * stride, ri = rOff + i * rStride;
+				if (contiguous)
+					k.divide(data, mi, divisor, res, ri, cols);
+				else
+					for (int j = 0; j < cols; j++, mi += col, ri += rCol)
+						res[ri] = data[mi] / divisor;
+			}
+		});
+
+	}
+
+	private static void multiplyInto(final Matrix mat,
+			final double multiplier, final Matrix result) {
+
+		final int rows = mat.getRows(), cols = mat.getCols();
+		final double data[] = mat.getData(), res[] = result.getData();
+		final int off = mat.getOffset(), rOff = result.getOffset();
+		final int stride = mat.getStride(), rStride = result.getStride();
+		final int col = mat.getColStride(), rCol = result.getColStride();
+		final boolean contiguous = col == 1 && rCol == 1;
+		final VectorKernels k = kernels;
+
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int mi = off + i * stride, ri = rOff + i * rStride;
+				if (contiguous)
+					k.scale(data, mi, multiplier, res, ri, cols);
+				else
+					for (int j = 0; j < cols; j++, mi += col, ri += rCol)
+						res[ri] = data[mi] * multiplier;
+			}
+		});
+
+	}
+
+	private static void multiplyInto(final Matrix a, final Matrix b,
+			final Matrix result, final int blockRows, final int blockDepth,
+			final int blockCols) {
+
+		final double res[] = result.getData();
+		final int rOff = result.getOffset(), rStride = result.getStride(), rCol = result
+				.getColStride(), cols = result.getCols();
+
+		ParallelRows.run(pool, parallelThreshold, a.getRows(),
+				(long) a.getCols() * b.getCols(), (from, to) -> {
+					// the kernel accumulates, so start from zero
+					for (int i = from; i < to; i++)
+						for (int j = 0, ri = rOff + i * rStride; j < cols; j++, ri += rCol)
+							res[ri] = 0;
+					multiplyBlocked(a, b, result, from, to, blockRows,
+							blockDepth, blockCols);
+				});
+
+	}
+
+	private static void transposeInto(final Matrix a, final Matrix result) {
+
+		final int rows = a.getRows(), cols = a.getCols();
+		final double data[] = a.getData(), res[] = result.getData();
+		final int off = a.getOffset(), rOff = result.getOffset();
+		final int stride = a.getStride(), col = a.getColStride();
+		final int rStride = result.getStride(), rCol = result.getColStride();
+
+		// read each row of a and scatter it into a column of res
+		ParallelRows.run(pool, parallelThreshold, rows, cols, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int ai = off + i * stride, ri = rOff + i * rCol;
+				for (int j = 0; j < cols; j++, ai += col, ri += rStride)
+					res[ri] = data[ai];
+			}
+		});
+
+	}
+
+	/*
+	 * Tiled kernel computing rows [rowFrom, rowTo) of res += a * b. Within a
+	 * tile four rows of a are processed together, so that every element of b
+	 * loaded from memory is used four times, and the innermost loop runs
+	 * along a row of b and a row of res, both contiguous in memory unless one
+	 * of them is a column-wise view.
+	 */
+	static void multiplyBlocked(final Matrix a, final Matrix b,
+			final Matrix res, final int rowFrom, final int rowTo,
+			final int blockRows, final int blockDepth, final int blockCols) {
+
+		final double aData[] = a.getData(), bData[] = b.getData(), cData[] = res
+				.getData();
+		final int aOff = a.getOffset(), bOff = b.getOffset(), cOff = res
+				.getOffset();
+		final int aStride = a.getStride(), bStride = b.getStride(), cStride = res
+				.getStride();
+		final int aCol = a.getColStride(), bCol = b.getColStride(), cCol = res
+				.getColStride();
+		final int depth = a.getCols(), cols = b.getCols();
+		final boolean contiguous = bCol == 1 && cCol == 1;
+
+		for (int ii = rowFrom; ii < rowTo; ii += blockRows) {
+			final int iEnd = Math.min(ii + blockRows, rowTo);
+
+			for (int kk = 0; kk < depth; kk += blockDepth) {
+				final int kEnd = Math.min(kk + blockDepth, depth);
+
+				for (int jj = 0; jj < cols; jj += blockCols) {
+					final int jEnd = Math.min(jj + blockCols, cols);
+
+					int i = ii;
+					for (; i + 3 < iEnd; i += 4) {
+						final int c0 = cOff + i * cStride, c1 = c0 + cStride, c2 = c1
+								+ cStride, c3 = c2 + cStride;
+						final int a0 = aOff + i * aStride, a1 = a0 + aStride, a2 = a1
+								+ aStride, a3 = a2 + aStride;
+
+						for (int k = kk; k < kEnd; k++) {
+							final int ak = k * aCol;
+							final double x0 = aData[a0 + ak], x1 = aData[a1 + ak];
+							final double x2 = aData[a2 + ak], x3 = aData[a3 + ak];
+							final int bk = bOff + k * bStride;
+
+							if (contiguous)
+								for (int j = jj; j < jEnd; j++) {
+									final double y = bData[bk + j];
+									cData[c0 + j] += x0 * y;
+									cData[c1 + j] += x1 * y;
+									cData[c2 + j] += x2 * y;
+									cData[c3 + j] += x3 * y;
+								}
+							else
+								for (int j = jj; j < jEnd; j++) {
+									final double y = bData[bk + j * bCol];
+									final int cj = j * cCol;
+									cData[c0 + cj] += x0 * y;
+									cData[c1 + cj] += x1 * y;
+									cData[c2 + cj] += x2 * y;
+									cData[c3 + cj] += x3 * y;
+								}
+						}
+					}
+
+					// remaining rows of the tile, one at a time
+					for (; i < iEnd; i++) {
+						final int c0 = cOff + i * cStride, a0 = aOff + i
+								* aStride;
+
+						for (int k = kk; k < kEnd; k++) {
+							final double x0 = aData[a0 + k * aCol];
+							final int bk = bOff + k * bStride;
+
+							for (int j = jj; j < jEnd; j++)
+								cData[c0 + j * cCol] += x0 * bData[bk + j * bCol];
+						}
+					}
+				}
+			}
+		}
 
 	}
 
@@ -242,17 +1162,43 @@ public class MatrixMath {
 	 */
 	public static Matrix transpose(final Matrix a) {
 
-		double res[][] = new double[a.getCols()][a.getRows()];
+		final Matrix res = new Matrix(a.getCols(), a.getRows());
 
-		for (int i = 0; i < a.getRows(); i++)
-			for (int j = 0; j < a.getCols(); j++)
-				try {
-					res[j][i] = a.getElement(i, j);
-				} catch (MatrixIndexOutOfBoundsException e) {
-					e.printStackTrace();
-				}
+		transposeInto(a, res);
+
+		return res;
+
+	}
+
+	/**
+	 * Store the transpose of a given matrix in the given result matrix, which
+	 * cannot share storage with a<br/>
+	 * 
+	 * @param a
+	 *            matrix whose transpose is desired
+	 * @param result
+	 *            the matrix in which the transpose is stored, with as many rows
+	 *            as a has columns and as many columns as a has rows <br/>
+	 * 
+	 * @return the result matrix, holding the transpose of a
+	 * 
+	 * @throws MatrixIncompatibilityException
+	 *             if the result is not of the order of the transpose
+	 * @throws MatrixAliasingException
+	 *             if the result shares storage with a
+	 */
+	public static Matrix transpose(final Matrix a, final Matrix result)
+			throws MatrixIncompatibilityException, MatrixAliasingException {
 
-		return new Matrix(res);
+		if (result.getRows() != a.getCols() || result.getCols() != a.getRows())
+			throw new MatrixIncompatibilityException();
+
+		if (result.getData() == a.getData())
+			throw new MatrixAliasingException();
+
+		transposeInto(a, result);
+
+		return result;
 
 	}
 
@@ -273,10 +1219,15 @@ public class MatrixMath {
 			throw new NotVectorException();
 
 		double length = 0;
-		double array[] = a.toPackedArray();
+		final int size = a.getRows() * a.getCols();
+		final double array[] = a.getData();
+		final int inc = increment(a);
 
-		for (int i = 0; i < array.length; i++)
-			length += array[i] * array[i];
+		if (inc == 1)
+			length = kernels.sumOfSquares(array, a.getOffset(), size);
+		else
+			for (int i = 0, index = a.getOffset(); i < size; i++, index += inc)
+				length += array[index] * array[index];
 
 		length = Math.sqrt(length);
 
@@ -0,0 +1,93 @@
+package org.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelRows: a fork/join task which splits a range of matrix rows into
+ * halves until every piece holds no more work than the parallel threshold,
+ * and then runs the given row operation on each piece. Row ranges never
+ * overlap, so operations which only write to their own rows of the result
+ * need no further synchronization. <br/>
+ *
+ * @author Srijith Nair
+ *
+ */
+final class ParallelRows extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * An operation on the rows from (inclusive) to (exclusive)
+	 */
+	interface RowOperation {
+
+		void apply(int from, int to);
+
+	}
+
+	// tasks are never serialized, so the operation need not be either
+	private final transient RowOperation operation;
+
+	private final int from, to, grain;
+
+	private ParallelRows(final RowOperation operation, final int from,
+			final int to, final int grain) {
+
+		this.operation = operation;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+
+	}
+
+	@Override
+	protected void compute() {
+
+		if (to - from <= grain) {
+			operation.apply(from, to);
+			return;
+		}
+
+		final int mid = (from + to) >>> 1;
+
+		invokeAll(new ParallelRows(operation, from, mid, grain),
+				new ParallelRows(operation, mid, to, grain));
+
+	}
+
+	/**
+	 * Run an operation over the rows [0, rows), in parallel on the given pool
+	 * if the total work is above the threshold, and on the calling thread
+	 * otherwise. <br/>
+	 *
+	 * @param pool
+	 *            the pool to run on, or null to always run serially
+	 * @param threshold
+	 *            the least amount of work worth splitting
+	 * @param rows
+	 *            the number of rows to process
+	 * @param workPerRow
+	 *            the amount of work (element operations) for a single row
+	 * @param operation
+	 *            the operation to run on each range of rows
+	 */
+	static void run(final ForkJoinPool pool, final long threshold,
+			final int rows, final long workPerRow, final RowOperation operation) {
+
+		final long work = rows * Math.max(workPerRow, 1);
+
+		if (pool == null || rows < 2 || work < threshold
+				|| pool.getParallelism() < 2) {
+			operation.apply(0, rows);
+			return;
+		}
+
+		final int grain = (int) Math.max(1,
+				Math.min(rows, threshold / Math.max(workPerRow, 1)));
+
+		pool.invoke(new ParallelRows(operation, 0, rows, grain));
+
+	}
+
+}
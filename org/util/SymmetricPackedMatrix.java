@@ -0,0 +1,213 @@
+package org.util;
+
+/**
+ * SymmetricPackedMatrix: a symmetric square matrix with a zero diagonal, such
+ * as the weight matrix of a Hopfield network, stored as its strict upper
+ * triangle only. An N x N matrix takes N(N-1)/2 elements instead of N^2, i.e.,
+ * a little less than half the memory, and half the memory traffic for every
+ * pass over it. <br/>
+ *
+ * <p>
+ * The triangle is packed row after row: row i holds the elements (i, i+1) to
+ * (i, N-1), so every packed row is contiguous. Element (j, i) below the
+ * diagonal is element (i, j), and the diagonal has no storage and is always
+ * zero. Since the packed array is indexed with an int, N may be at most
+ * 65536; a full matrix of N^2 elements only fits in an array up to N =
+ * 46340, so larger matrices cannot be expanded with toMatrix().
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+public class SymmetricPackedMatrix {
+
+	// the strict upper triangle, row after row
+	private final double data[];
+
+	// number of rows and columns
+	private final int size;
+
+	/**
+	 * Constructor: creates a size x size matrix with all elements zero <br/>
+	 *
+	 * @param size
+	 *            the number of rows and columns
+	 */
+	public SymmetricPackedMatrix(final int size) {
+
+		if ((long) size * (size - 1) / 2 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("matrix of order " + size
+					+ " too large to pack");
+
+		this.size = size;
+		this.data = new double[(int) ((long) size * (size - 1) / 2)];
+
+	}
+
+	/**
+	 * Create a packed matrix from the strict upper triangle of a square
+	 * matrix. The lower triangle and the diagonal are not read, so they are
+	 * assumed to mirror the upper triangle and to be zero respectively <br/>
+	 *
+	 * @param mat
+	 *            a symmetric square matrix with a zero diagonal <br/>
+	 *
+	 * @return the packed upper triangle of mat
+	 *
+	 * @throws MatrixIncompatibilityException
+	 *             if mat is not square
+	 */
+	public static SymmetricPackedMatrix fromMatrix(final Matrix mat)
+			throws MatrixIncompatibilityException {
+
+		if (mat.getRows() != mat.getCols())
+			throw new MatrixIncompatibilityException();
+
+		final SymmetricPackedMatrix packed = new SymmetricPackedMatrix(
+				mat.getRows());
+		final double src[] = mat.getData();
+		final int off = mat.getOffset(), stride = mat.getStride(), col = mat
+				.getColStride();
+
+		for (int i = 0, k = 0; i < packed.size; i++)
+			for (int j = i + 1; j < packed.size; j++, k++)
+				packed.data[k] = src[off + i * stride + j * col];
+
+		return packed;
+
+	}
+
+	/**
+	 * Get the number of rows (and columns) of this matrix
+	 *
+	 * @return order of the matrix
+	 */
+	public int getSize() {
+
+		return this.size;
+
+	}
+
+	/**
+	 * Get the packed strict upper triangle backing this matrix. The array is
+	 * not copied <br/>
+	 *
+	 * @return the packed storage of this matrix
+	 */
+	public double[] getData() {
+
+		return this.data;
+
+	}
+
+	/**
+	 * Get the index in the packed storage of element (row, row + 1), the
+	 * first stored element of a row. The stored elements of the row follow it
+	 * contiguously, up to element (row, size - 1) <br/>
+	 *
+	 * @param row
+	 *            the row (indexed from 0)
+	 *
+	 * @return index of the first stored element of the row
+	 */
+	public int rowStart(final int row) {
+
+		return (int) ((long) row * (2 * size - row - 1) / 2);
+
+	}
+
+	/**
+	 * Get the element in the row-th row and col-th column <br/>
+	 *
+	 * @param row
+	 *            the row number of the desired element (indexed from 0)
+	 * @param col
+	 *            the column number of the desired element (indexed from 0) <br/>
+	 *
+	 * @return the element at the desired location, zero on the diagonal <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the given column and row values are not in the matrix's
+	 *             bounds
+	 */
+	public double getElement(final int row, final int col)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		if (row == col)
+			return 0;
+
+		return data[index(row, col)];
+
+	}
+
+	/**
+	 * Change the value of element (row, col), and with it element (col, row) <br/>
+	 *
+	 * @param row
+	 *            the row number of the element to be set (indexed from 0)
+	 * @param col
+	 *            the column number of the element to be set (indexed from 0)
+	 * @param value
+	 *            the value to which the element has to be changed <br/>
+	 *
+	 * @throws MatrixIndexOutOfBoundsException
+	 *             If the indices are not in the matrix's bounds, or a non-zero
+	 *             value is set on the diagonal, which has no storage
+	 */
+	public void set(final int row, final int col, final double value)
+			throws MatrixIndexOutOfBoundsException {
+
+		checkBounds(row, col);
+
+		if (row == col) {
+			if (value != 0)
+				throw new MatrixIndexOutOfBoundsException();
+			return;
+		}
+
+		data[index(row, col)] = value;
+
+	}
+
+	/**
+	 * Expand this matrix into a full square matrix <br/>
+	 *
+	 * @return a size x size matrix with the elements of this matrix
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the full matrix has more elements than an array can
+	 *             hold, i.e., the order is above 46340
+	 */
+	public Matrix toMatrix() {
+
+		final double full[] = new double[Matrix.elementCount(size, size)];
+
+		for (int i = 0, k = 0; i < size; i++)
+			for (int j = i + 1; j < size; j++, k++) {
+				full[i * size + j] = data[k];
+				full[j * size + i] = data[k];
+			}
+
+		return new Matrix(size, size, full);
+
+	}
+
+	// index in data of element (row, col), row and col distinct
+	private int index(final int row, final int col) {
+
+		return row < col ? rowStart(row) + col - row - 1 : rowStart(col) + row
+				- col - 1;
+
+	}
+
+	private void checkBounds(final int row, final int col)
+			throws MatrixIndexOutOfBoundsException {
+
+		if (row < 0 || col < 0 || row >= size || col >= size)
+			throw new MatrixIndexOutOfBoundsException();
+
+	}
+
+}
@@ -0,0 +1,143 @@
+package org.util;
+
+/**
+ * VectorKernels: the loops at the heart of MatrixMath, working on contiguous
+ * runs of elements in the backing arrays of matrices. This class holds the
+ * plain scalar loops. When SimdKernels, from the optional/vector source
+ * root, is on the class path and the jdk.incubator.vector module is present
+ * at run time (e.g. the JVM is started with --add-modules
+ * jdk.incubator.vector), it overrides them with loops over the widest vector
+ * species the CPU supports. <br/>
+ *
+ * <p>
+ * The element-wise kernels (add, subtract, scale, divide, axpy) give results
+ * identical to the scalar loops. The reductions (dot, sumOfSquares) keep one
+ * partial sum per vector lane and add the lanes at the end, so the rounding
+ * differs from the sequential sum. For n terms the difference from the exact
+ * result is at most about n * 2<sup>-53</sup> * sum(|a<sub>i</sub> *
+ * b<sub>i</sub>|) for either path. Sums of integer-valued terms, such as the
+ * local fields of a Hebbian Hopfield network, are exact on both paths as
+ * long as they stay below 2<sup>53</sup>.
+ * </p>
+ *
+ * @author Srijith Nair
+ *
+ */
+class VectorKernels {
+
+	// the scalar kernels, always available
+	static final VectorKernels SCALAR = new VectorKernels();
+
+	// the vector API kernels, or null if the module is not present
+	static final VectorKernels SIMD = loadSimd();
+
+	/*
+	 * SimdKernels is only linked if it is asked for by name, so a missing
+	 * class or jdk.incubator.vector module shows up here as an error which
+	 * leaves the scalar kernels in use
+	 */
+	private static VectorKernels loadSimd() {
+
+		if (Boolean.getBoolean("org.util.noSimd"))
+			return null;
+
+		try {
+			return (VectorKernels) Class.forName("org.util.SimdKernels")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+
+	}
+
+	/**
+	 * Get a short description of these kernels
+	 *
+	 * @return the name of the kernels, with the vector shape if any
+	 */
+	String name() {
+
+		return "scalar";
+
+	}
+
+	/**
+	 * r[rOff + i] = a[aOff + i] + b[bOff + i] for i in [0, length)
+	 */
+	void add(final double a[], final int aOff, final double b[],
+			final int bOff, final double r[], final int rOff, final int length) {
+
+		for (int i = 0; i < length; i++)
+			r[rOff + i] = a[aOff + i] + b[bOff + i];
+
+	}
+
+	/**
+	 * r[rOff + i] = a[aOff + i] - b[bOff + i] for i in [0, length)
+	 */
+	void subtract(final double a[], final int aOff, final double b[],
+			final int bOff, final double r[], final int rOff, final int length) {
+
+		for (int i = 0; i < length; i++)
+			r[rOff + i] = a[aOff + i] - b[bOff + i];
+
+	}
+
+	/**
+	 * r[rOff + i] = a[aOff + i] * factor for i in [0, length)
+	 */
+	void scale(final double a[], final int aOff, final double factor,
+			final double r[], final int rOff, final int length) {
+
+		for (int i = 0; i < length; i++)
+			r[rOff + i] = a[aOff + i] * factor;
+
+	}
+
+	/**
+	 * r[rOff + i] = a[aOff + i] / divisor for i in [0, length)
+	 */
+	void divide(final double a[], final int aOff, final double divisor,
+			final double r[], final int rOff, final int length) {
+
+		for (int i = 0; i < length; i++)
+			r[rOff + i] = a[aOff + i] / divisor;
+
+	}
+
+	/**
+	 * y[yOff + i] += alpha * x[xOff + i] for i in [0, length)
+	 */
+	void axpy(final double alpha, final double x[], final int xOff,
+			final double y[], final int yOff, final int length) {
+
+		for (int i = 0; i < length; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+
+	}
+
+	/**
+	 * @return the sum of a[aOff + i] * b[bOff + i] for i in [0, length)
+	 */
+	double dot(final double a[], final int aOff, final double b[],
+			final int bOff, final int length) {
+
+		double sum = 0;
+
+		for (int i = 0; i < length; i++)
+			sum += a[aOff + i] * b[bOff + i];
+
+		return sum;
+
+	}
+
+	/**
+	 * @return the sum of a[aOff + i]^2 for i in [0, length)
+	 */
+	double sumOfSquares(final double a[], final int aOff, final int length) {
+
+		return dot(a, aOff, a, aOff, length);
+
+	}
+
+}